@@ -0,0 +1,183 @@
+package test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+
+import tp1.impl.servers.kafka.OpCodec;
+import util.CompactDataInput;
+import util.CompactDataOutput;
+
+/**
+ *
+ * Checks that records written with CompactDataOutput read back the same, including
+ * the boundary values of the varints and repeated strings, and compares the size and
+ * the encode/decode time of the compact format with Gson.
+ *
+ */
+public class CodecTest {
+
+	record WriteFile(String fileId, String owner, String filename, List<String> uris) {
+	}
+
+	// The same op, as a class, since Gson does not read records...
+	static class JsonWriteFile {
+		String fileId, owner, filename;
+		List<String> uris;
+
+		JsonWriteFile(WriteFile file) {
+			this.fileId = file.fileId();
+			this.owner = file.owner();
+			this.filename = file.filename();
+			this.uris = file.uris();
+		}
+	}
+
+	static final OpCodec<WriteFile> CODEC = new OpCodec<>(CodecTest::write, CodecTest::read);
+
+	public static void main(String[] args) throws Exception {
+		testInts();
+		testLongs();
+		testStrings();
+		testLines();
+		testCodec();
+		System.out.println("All checks passed...");
+
+		benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000);
+	}
+
+	static void testInts() throws IOException {
+		int[] values = { 0, 1, -1, 63, 64, -64, -65, 127, 128, Short.MAX_VALUE, Short.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		var out = new CompactDataOutput();
+		for (var v : values)
+			out.writeInt(v);
+		var in = new CompactDataInput(out.toByteArray());
+		for (var v : values)
+			check(in.readInt() == v, "int " + v);
+		checkEnd(in);
+
+		out = new CompactDataOutput();
+		out.writeInt(-1);
+		check(out.toByteArray().length == 1, "small negative ints take one byte");
+	}
+
+	static void testLongs() throws IOException {
+		long[] values = { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 1L << 35, -(1L << 35), Long.MAX_VALUE, Long.MIN_VALUE };
+		var out = new CompactDataOutput();
+		for (var v : values)
+			out.writeLong(v);
+		var in = new CompactDataInput(out.toByteArray());
+		for (var v : values)
+			check(in.readLong() == v, "long " + v);
+		checkEnd(in);
+	}
+
+	static void testStrings() throws IOException {
+		String[] values = { "", "smd", "", "Sérgio Duarte ☃ \u0000", "smd", "smd", "" };
+		var out = new CompactDataOutput();
+		for (var v : values)
+			out.writeUTF(v);
+		var in = new CompactDataInput(out.toByteArray());
+		for (var v : values)
+			check(v.equals(in.readUTF()), "string '" + v + "'");
+		checkEnd(in);
+
+		var once = new CompactDataOutput();
+		once.writeUTF("http://files-1:8080/rest/files/smd_file1");
+		var twice = new CompactDataOutput();
+		twice.writeUTF("http://files-1:8080/rest/files/smd_file1");
+		twice.writeUTF("http://files-1:8080/rest/files/smd_file1");
+		check(twice.toByteArray().length - once.toByteArray().length <= 2, "repeated strings are written as references");
+	}
+
+	static void testLines() throws IOException {
+		var out = new CompactDataOutput();
+		out.writeBytes("first\nsecond\r\nthird\rlast");
+		var in = new CompactDataInput(out.toByteArray());
+		for (var v : new String[] { "first", "second", "third", "last" })
+			check(v.equals(in.readLine()), "line " + v);
+		check(in.readLine() == null, "no line after the end");
+	}
+
+	static void testCodec() {
+		var file = new WriteFile("smd_file1", "smd", "file1", List.of("http://files-1:8080/rest/files/smd_file1", "http://files-2:8080/rest/files/smd_file1"));
+		check(file.equals(CODEC.deserialize("t", CODEC.serialize("t", file))), "op round trip");
+		check(CODEC.serialize("t", null) == null && CODEC.deserialize("t", null) == null, "null records pass through");
+
+		var bad = CODEC.serialize("t", file);
+		bad[0]++;
+		try {
+			CODEC.deserialize("t", bad);
+			check(false, "unknown versions are rejected");
+		} catch (RuntimeException x) {
+		}
+	}
+
+	static void benchmark(int n) {
+		var files = new ArrayList<WriteFile>();
+		var jsonFiles = new ArrayList<JsonWriteFile>();
+		for (int i = 0; i < 1000; i++) {
+			var fileId = "user" + (i % 50) + "_file" + i;
+			files.add(new WriteFile(fileId, "user" + (i % 50), "file" + i, List.of("https://files-" + (i % 3) + ":8080/rest/files/" + fileId, "https://files-" + ((i + 1) % 3) + ":8080/rest/files/" + fileId)));
+			jsonFiles.add(new JsonWriteFile(files.get(i)));
+		}
+		var gson = new Gson();
+
+		for (int round = 0; round < 3; round++) {
+			long compactBytes = 0, gsonBytes = 0, sink = 0;
+
+			long t0 = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				var data = CODEC.serialize("t", files.get(i % files.size()));
+				compactBytes += data.length;
+				sink += CODEC.deserialize("t", data).uris().size();
+			}
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				var json = gson.toJson(jsonFiles.get(i % jsonFiles.size()));
+				gsonBytes += json.getBytes(StandardCharsets.UTF_8).length;
+				sink += gson.fromJson(json, JsonWriteFile.class).uris.size();
+			}
+			long t2 = System.nanoTime();
+
+			System.out.printf("compact: %d bytes/op, %d ns/op; gson: %d bytes/op, %d ns/op (%d)\n", compactBytes / n, (t1 - t0) / n, gsonBytes / n, (t2 - t1) / n, sink);
+		}
+	}
+
+	static void write(DataOutput out, WriteFile file) throws IOException {
+		out.writeUTF(file.fileId());
+		out.writeUTF(file.owner());
+		out.writeUTF(file.filename());
+		out.writeInt(file.uris().size());
+		for (var uri : file.uris())
+			out.writeUTF(uri);
+	}
+
+	static WriteFile read(DataInput in) throws IOException {
+		var fileId = in.readUTF();
+		var owner = in.readUTF();
+		var filename = in.readUTF();
+		var uris = new ArrayList<String>();
+		for (int i = in.readInt(); i > 0; i--)
+			uris.add(in.readUTF());
+		return new WriteFile(fileId, owner, filename, uris);
+	}
+
+	static void checkEnd(DataInput in) {
+		try {
+			in.readByte();
+			check(false, "no data after the records");
+		} catch (IOException x) {
+		}
+	}
+
+	static void check(boolean ok, String what) {
+		if (!ok)
+			throw new AssertionError("Failed: " + what);
+	}
+}
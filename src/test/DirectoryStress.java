@@ -0,0 +1,187 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import tp1.api.FileInfo;
+import tp1.api.User;
+import tp1.api.service.java.Directory;
+import tp1.api.service.java.Result;
+import tp1.api.service.java.Result.ErrorCode;
+import tp1.api.service.java.Users;
+import tp1.impl.clients.Clients;
+import tp1.impl.servers.common.JavaFiles;
+import tp1.impl.servers.rest.DirectoryRestServer;
+import tp1.impl.servers.rest.FilesRestServer;
+import tp1.impl.servers.rest.UsersRestServer;
+import util.Debug;
+
+/**
+ *
+ * Stress test of the Directory: runs concurrent writes, shares, unshares and deletes of
+ * the same file, and then checks that the listings of the owner and of the readers, and
+ * the files stored, agree with the final state of the file.
+ *
+ * It then measures the throughput of concurrent writers of different files of the same
+ * user, which should grow with the number of writers.
+ *
+ * Usage: DirectoryStress [threads] [ops per thread]
+ *
+ * The servers run in this process, so it needs a keystore and a truststore, eg.
+ * -Djavax.net.ssl.keyStore=tls/directoryserver.jks -Djavax.net.ssl.keyStorePassword=changeit
+ * -Djavax.net.ssl.trustStore=tls/truststore.jks -Djavax.net.ssl.trustStorePassword=changeit
+ *
+ */
+public class DirectoryStress {
+
+	// Users of their own, so that the files left by a run that was interrupted do not count...
+	static final String OWNER = "stress" + ProcessHandle.current().pid(), PASSWORD = "12345";
+	static final String FILENAME = "contended";
+	static final int READERS = 4;
+
+	public static void main(String[] args) throws Exception {
+		try {
+			run(args);
+			System.out.println("Done...");
+			System.exit(0);
+		} catch (Throwable x) {
+			// The servers run in this process, and would otherwise outlive a failed run...
+			x.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	static void run(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int ops = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		// A single Files server, so each file has a single replica...
+		System.setProperty("dir.replicas", "1");
+
+		UsersRestServer.main(new String[] { "xxx" });
+		DirectoryRestServer.main(new String[] { "xxx" });
+		FilesRestServer.main(new String[] { "xxx" });
+
+		Debug.setLogLevel(Level.WARNING, "");
+
+		Users us = Clients.UsersClients.get();
+		Directory dir = Clients.DirectoryClients.get();
+
+		us.createUser(new User(OWNER, "Stress Owner", "stress@fct.unl.pt", PASSWORD));
+		for (int i = 0; i < READERS; i++)
+			us.createUser(new User(reader(i), "Stress Reader " + i, reader(i) + "@fct.unl.pt", PASSWORD));
+
+		long initial = JavaFiles.storedFiles();
+		contend(dir, threads, ops);
+		checkFinalState(dir, initial);
+
+		for (int n = 1; n <= threads; n *= 2)
+			throughput(dir, n, ops);
+
+		for (int i = 0; i < READERS; i++)
+			us.deleteUser(reader(i), PASSWORD);
+		us.deleteUser(OWNER, PASSWORD);
+		awaitStored(initial);
+		check(JavaFiles.storedFiles() == initial, "files left after deleting the users: " + (JavaFiles.storedFiles() - initial));
+	}
+
+	/*
+	 * Runs random operations on the same file, from several threads; errors other than those
+	 * expected from the interleaving, eg. sharing a file just deleted, fail the test.
+	 */
+	static void contend(Directory dir, int threads, int ops) throws Exception {
+		var errors = new ConcurrentHashMap<String, AtomicLong>();
+		runAll(threads, () -> {
+			var rnd = ThreadLocalRandom.current();
+			for (int i = 0; i < ops; i++) {
+				var reader = reader(rnd.nextInt(READERS));
+				var res = switch (rnd.nextInt(4)) {
+				case 0 -> dir.writeFile(FILENAME, ("data" + i).getBytes(), OWNER, PASSWORD);
+				case 1 -> dir.shareFile(FILENAME, OWNER, reader, PASSWORD);
+				case 2 -> dir.unshareFile(FILENAME, OWNER, reader, PASSWORD);
+				default -> dir.deleteFile(FILENAME, OWNER, PASSWORD);
+				};
+				if (!res.isOK())
+					errors.computeIfAbsent(res.error().toString(), (k) -> new AtomicLong()).incrementAndGet();
+			}
+		});
+		System.out.println("Contended ops failed with: " + errors);
+		check(errors.keySet().stream().allMatch(ErrorCode.NOT_FOUND.toString()::equals), "only NOT_FOUND errors");
+	}
+
+	/*
+	 * The owner lists the file once if it exists, each reader lists it if shared with it, and
+	 * the Files server stores it, once all the writes and deletes finished in the background.
+	 */
+	static void checkFinalState(Directory dir, long stored) throws Exception {
+		var owned = value(dir.lsFile(OWNER, PASSWORD)).stream().filter(f -> f.getFilename().equals(FILENAME)).toList();
+		var exists = dir.getFile(FILENAME, OWNER, OWNER, PASSWORD).isOK();
+		check(owned.size() == (exists ? 1 : 0), "owner lists the file iff it exists, once: " + owned);
+
+		FileInfo file = exists ? owned.get(0) : null;
+		for (int i = 0; i < READERS; i++) {
+			var reader = reader(i);
+			var listed = value(dir.lsFile(reader, PASSWORD)).stream().filter(f -> f.getFilename().equals(FILENAME)).count();
+			var shared = file != null && file.getSharedWith().contains(reader);
+			check(listed == (shared ? 1 : 0), reader + " lists the file iff shared with it");
+			check(dir.getFile(FILENAME, OWNER, reader, PASSWORD).isOK() == shared, reader + " reads the file iff shared with it");
+		}
+
+		long expected = stored + (exists ? 1 : 0);
+		awaitStored(expected);
+		check(JavaFiles.storedFiles() == expected, "files stored: " + (JavaFiles.storedFiles() - stored) + ", expected: " + (expected - stored));
+		System.out.println("All checks passed... (file exists: " + exists + ")");
+	}
+
+	static void throughput(Directory dir, int threads, int ops) throws Exception {
+		long t0 = System.nanoTime();
+		runAll(threads, () -> {
+			var name = Thread.currentThread().getName();
+			for (int i = 0; i < ops; i++)
+				check(dir.writeFile(name + "-" + i, "data".getBytes(), OWNER, PASSWORD).isOK(), "write " + name + "-" + i);
+		});
+		long elapsed = System.nanoTime() - t0;
+		System.out.printf("%d writers of the same user: %.0f writes/s\n", threads, threads * ops * 1e9 / elapsed);
+	}
+
+	/*
+	 * Waits, for a while, for the files written or deleted in the background to reach the expected count.
+	 */
+	static void awaitStored(long expected) throws InterruptedException {
+		for (int i = 0; i < 100 && JavaFiles.storedFiles() != expected; i++)
+			Thread.sleep(100);
+	}
+
+	static void runAll(int threads, Runnable task) throws Exception {
+		var executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> all = new ArrayList<>();
+			for (int i = 0; i < threads; i++)
+				all.add(executor.submit(task));
+			for (var f : all)
+				f.get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static <T> T value(Result<T> res) {
+		check(res.isOK(), "unexpected error: " + res.error());
+		return res.value();
+	}
+
+	static String reader(int i) {
+		return OWNER + "-reader" + i;
+	}
+
+	static void check(boolean ok, String what) {
+		if (!ok)
+			throw new AssertionError("Failed: " + what);
+	}
+}
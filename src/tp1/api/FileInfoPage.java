@@ -0,0 +1,48 @@
+package tp1.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of a listing of files, with the cursor to request the next page
+ */
+public class FileInfoPage {
+	/**
+	 * The files in this page
+	 */
+	private List<FileInfo> files;
+	/**
+	 * Opaque token to obtain the next page, null if this is the last one
+	 */
+	private String next;
+
+	public FileInfoPage() {
+		this.files = new ArrayList<>();
+	}
+
+	public FileInfoPage(List<FileInfo> files, String next) {
+		this.files = files;
+		this.next = next;
+	}
+
+	public List<FileInfo> getFiles() {
+		return files;
+	}
+
+	public void setFiles(List<FileInfo> files) {
+		this.files = files;
+	}
+
+	public String getNext() {
+		return next;
+	}
+
+	public void setNext(String next) {
+		this.next = next;
+	}
+
+	@Override
+	public String toString() {
+		return "FileInfoPage [files=" + files + ", next=" + next + "]";
+	}
+}
@@ -0,0 +1,48 @@
+package tp1.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the results of a search of users, with the cursor to request the next page
+ */
+public class UserPage {
+	/**
+	 * The users in this page
+	 */
+	private List<User> users;
+	/**
+	 * Opaque token to obtain the next page, null if this is the last one
+	 */
+	private String next;
+
+	public UserPage() {
+		this.users = new ArrayList<>();
+	}
+
+	public UserPage(List<User> users, String next) {
+		this.users = users;
+		this.next = next;
+	}
+
+	public List<User> getUsers() {
+		return users;
+	}
+
+	public void setUsers(List<User> users) {
+		this.users = users;
+	}
+
+	public String getNext() {
+		return next;
+	}
+
+	public void setNext(String next) {
+		this.next = next;
+	}
+
+	@Override
+	public String toString() {
+		return "UserPage [users=" + users + ", next=" + next + "]";
+	}
+}
@@ -1,8 +1,13 @@
 package tp1.api.service.java;
 
+import static tp1.api.service.java.Result.error;
+import static tp1.api.service.java.Result.ok;
+
+import java.util.Iterator;
 import java.util.List;
 
 import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
 
 public interface Directory {
 
@@ -19,6 +24,23 @@ public interface Directory {
 	Result<byte[]> getFile(String filename,  String userId, String accUserId, String password);
 
 	Result<List<FileInfo>> lsFile(String userId, String password);
+
+	/**
+	 * Paginated variant of lsFile. Returns up to limit files (all, if 0), resuming after
+	 * the position given by the cursor of the previous page (the beginning, if null).
+	 */
+	Result<FileInfoPage> lsFilePage(String userId, String password, int limit, String cursor);
+
+	/**
+	 * Iterates over the files of the user, from the position given by the cursor (the beginning,
+	 * if null), fetching pageSize files at a time.
+	 */
+	default Result<Iterator<FileInfo>> lsFileIterator(String userId, String password, int pageSize, String cursor) {
+		var first = lsFilePage(userId, password, pageSize, cursor);
+		if (!first.isOK())
+			return error(first.error());
+		return ok(new FileInfoPager(first.value(), (next) -> lsFilePage(userId, password, pageSize, next)));
+	}
 		
 	Result<Void> deleteUserFiles(String userId, String password, String token);
 }
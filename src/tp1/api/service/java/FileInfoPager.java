@@ -0,0 +1,49 @@
+package tp1.api.service.java;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
+
+/**
+ * 
+ * Iterates over a paginated listing of files, requesting each page only when the
+ * previous one has been consumed.
+ * 
+ * A failure to obtain a page after the first is reported as a RuntimeException
+ * with the error code as its message.
+ *
+ */
+public class FileInfoPager implements Iterator<FileInfo> {
+
+	private final Function<String, Result<FileInfoPage>> nextPage;
+	private Iterator<FileInfo> current;
+	private String cursor;
+
+	public FileInfoPager(FileInfoPage first, Function<String, Result<FileInfoPage>> nextPage) {
+		this.nextPage = nextPage;
+		this.current = first.getFiles().iterator();
+		this.cursor = first.getNext();
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext() && cursor != null) {
+			var res = nextPage.apply(cursor);
+			if (!res.isOK())
+				throw new RuntimeException(res.error().toString());
+			current = res.value().getFiles().iterator();
+			cursor = res.value().getNext();
+		}
+		return current.hasNext();
+	}
+
+	@Override
+	public FileInfo next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return current.next();
+	}
+}
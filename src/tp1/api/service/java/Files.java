@@ -1,14 +1,45 @@
 package tp1.api.service.java;
 
+import static tp1.api.service.java.Result.error;
+import static tp1.api.service.java.Result.ok;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import tp1.api.service.java.Result.ErrorCode;
+
 public interface Files {
 	public static String SERVICE_NAME = "files";
-	
+
 	Result<byte[]> getFile(String fileId, String token);
 
 	Result<Void> deleteFile(String fileId, String token);
-	
+
 	Result<Void> writeFile(String fileId, byte[] data, String token);
 
 	Result<Void> deleteUserFiles(String userId, String token);
-	
+
+	/**
+	 * Streaming variant of getFile. The caller owns the returned stream and must close it.
+	 *
+	 * Implementations that cannot stream fall back to reading the whole file.
+	 */
+	default Result<InputStream> getFileStream(String fileId, String token) {
+		var res = getFile(fileId, token);
+		return res.isOK() ? ok(new ByteArrayInputStream(res.value())) : error(res.error());
+	}
+
+	/**
+	 * Streaming variant of writeFile. The data stream is consumed, but not closed.
+	 *
+	 * Implementations that cannot stream fall back to buffering the whole file.
+	 */
+	default Result<Void> writeFileStream(String fileId, InputStream data, String token) {
+		try {
+			return writeFile(fileId, data.readAllBytes(), token);
+		} catch (IOException x) {
+			return error(ErrorCode.INTERNAL_ERROR);
+		}
+	}
 }
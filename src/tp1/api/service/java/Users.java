@@ -3,6 +3,7 @@ package tp1.api.service.java;
 import java.util.List;
 
 import tp1.api.User;
+import tp1.api.UserPage;
 
 public interface Users {
 	public static String SERVICE_NAME = "users";
@@ -16,4 +17,10 @@ public interface Users {
 	Result<User> deleteUser(String userId, String password);
 	
 	Result<List<User>> searchUsers(String pattern);	
+
+	/**
+	 * Paginated variant of searchUsers. Returns up to limit users (all, if 0), resuming after
+	 * the position given by the cursor of the previous page (the beginning, if null).
+	 */
+	Result<UserPage> searchUsersPage(String pattern, int limit, String cursor);
 }
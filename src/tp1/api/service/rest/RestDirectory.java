@@ -1,7 +1,5 @@
 package tp1.api.service.rest;
 
-import java.util.List;
-
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.DefaultValue;
@@ -12,6 +10,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 import tp1.api.FileInfo;
 
 @Path(RestDirectory.PATH)
@@ -24,6 +23,14 @@ public interface RestDirectory {
 	public static final String PASSWORD = "password";
 	public static final String ACC_USER_ID = "accUserId";
 	public static final String USER_ID_SHARE = "userIdShare";
+	public static final String LIMIT = "limit";
+	public static final String CURSOR = "cursor";
+	public static final String NEXT_CURSOR = "X-Next-Cursor";
+	/**
+	 * Version of the state of a replicated service, returned by its replicas and sent back by clients
+	 */
+	public static final String HEADER_VERSION = "X-DFS-version";
+	public static final String HEADER_REPLICAS = "X-DFS-replicas";
 
 	/**
 	 * Write a new version of a file. If the file exists, its contents are
@@ -130,8 +137,14 @@ public interface RestDirectory {
 	 * List the files a given user ("userId") has access to - this includes both its
 	 * own files and the files shared with her.
 	 * 
+	 * The list is streamed as a JSON array. If a limit is given, at most that many
+	 * files are returned and, if there are more, the cursor to obtain the next page
+	 * is returned in the X-Next-Cursor header.
+	 * 
 	 * @param userId   - id of the user.
 	 * @param password - the password of the user.
+	 * @param limit    - maximum number of files to return, 0 for all.
+	 * @param cursor   - the X-Next-Cursor of the previous page, absent for the first page.
 	 * 
 	 * @return 200 if success + list of FileInfo; 404 if the userId does not exist.
 	 *         403 if the password is incorrect. 400 otherwise.
@@ -139,7 +152,8 @@ public interface RestDirectory {
 	@GET
 	@Path("/{" + USER_ID + "}")
 	@Produces(MediaType.APPLICATION_JSON)
-	List<FileInfo> lsFile(@PathParam(USER_ID) String userId, @QueryParam(PASSWORD) String password);
+	Response lsFile(@PathParam(USER_ID) String userId, @QueryParam(PASSWORD) String password,
+			@QueryParam(LIMIT) @DefaultValue("0") int limit, @QueryParam(CURSOR) String cursor);
 
 	@DELETE
 	@Path("{" + USER_ID + "}")
@@ -1,15 +1,19 @@
 package tp1.api.service.rest;
 
+import java.io.InputStream;
+
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 
 @Path(RestFiles.PATH)
 public interface RestFiles {
@@ -18,11 +22,17 @@ public interface RestFiles {
 	public static final String TOKEN = "token";
 	public static final String FILE_ID = "fileId";
 	public static final String USER_ID = "userId";
+	public static final String RANGE = "Range";
+	public static final String ACCEPT_RANGES = "Accept-Ranges";
+	public static final String CONTENT_RANGE = "Content-Range";
 
 	/**
 	 * Write a file. If the file exists, overwrites the contents.
 	 * 
+	 * The contents are streamed to storage, so memory use does not depend on the file size.
+	 * 
 	 * @param fileId - unique id of the file.
+	 * @param data   - contents of the file.
 	 * @param token  - token for accessing the file server (in the first project
 	 *               this will not be used).
 	 *
@@ -31,7 +41,7 @@ public interface RestFiles {
 	@POST
 	@Path("/{" + FILE_ID + "}")
 	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
-	void writeFile(@PathParam(FILE_ID) String fileId, byte[] data, @QueryParam(TOKEN) @DefaultValue("") String token);
+	void writeFile(@PathParam(FILE_ID) String fileId, InputStream data, @QueryParam(TOKEN) @DefaultValue("") String token);
 
 	/**
 	 * Delete an existing file.
@@ -48,20 +58,24 @@ public interface RestFiles {
 	void deleteFile(@PathParam(FILE_ID) String fileId, @QueryParam(TOKEN) @DefaultValue("") String token);
 
 	/**
-	 * Get the contents of the file.
+	 * Get the contents of the file, streamed from storage.
+	 * 
+	 * Supports single HTTP byte ranges, so clients can resume or fetch parts of a file in parallel.
 	 * 
 	 * @param fileId - unique id of the file.
+	 * @param range  - optional value of the Range header (e.g. "bytes=0-1023").
 	 * @param token  - token for accessing the file server (in the first project
 	 *               this will not be used).
 	 * 
-	 * @return 200 if success + contents (through redirect to the File server); 404
-	 *         if the uniqueId does not exist. 403 if the password is incorrect. 400
-	 *         otherwise.
+	 * @return 200 if success + contents (through redirect to the File server); 206
+	 *         + the requested part of the contents; 416 if the range is outside the
+	 *         file; 404 if the uniqueId does not exist. 403 if the password is
+	 *         incorrect. 400 otherwise.
 	 */
 	@GET
 	@Path("/{" + FILE_ID + "}")
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
-	byte[] getFile(@PathParam(FILE_ID) String fileId, @QueryParam(TOKEN) @DefaultValue("") String token);
+	Response getFile(@PathParam(FILE_ID) String fileId, @HeaderParam(RANGE) String range, @QueryParam(TOKEN) @DefaultValue("") String token);
 
 	@DELETE
 	@Path("/user/{" + USER_ID + "}")
@@ -1,9 +1,8 @@
 package tp1.api.service.rest;
 
-import java.util.List;
-
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
@@ -12,6 +11,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 import tp1.api.User;
 
 @Path(RestUsers.PATH)
@@ -22,6 +22,13 @@ public interface RestUsers {
 	public static final String USER_ID="userId";
 	public static final String PASSWORD ="password";
 	public static final String TOKEN="token";
+	public static final String LIMIT = "limit";
+	public static final String CURSOR = "cursor";
+	public static final String NEXT_CURSOR = "X-Next-Cursor";
+	/**
+	 * Version of the state of a replicated service, returned by its replicas and sent back by clients
+	 */
+	public static final String HEADER_VERSION = "X-DFS-version";
 	
 	/**
 	 * Creates a new user.
@@ -90,11 +97,17 @@ public interface RestUsers {
 	 * Returns the list of users for which the pattern is a substring of the name (of the user), case-insensitive.
 	 * The password of the users returned by the query must be set to the empty string "".
 	 * 
+	 * If a limit is given, at most that many users are returned, ordered by userId and, if
+	 * there are more, the cursor to obtain the next page is returned in the X-Next-Cursor header.
+	 * 
 	 * @param pattern substring to search
+	 * @param limit   maximum number of users to return, 0 for all.
+	 * @param cursor  the X-Next-Cursor of the previous page, absent for the first page.
 	 * @return 200 when the search was successful, regardless of the number of hits (including 0 hits).
 	 *         400 otherwise.
 	 */
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	List<User> searchUsers(@QueryParam(QUERY) String pattern);
+	Response searchUsers(@QueryParam(QUERY) String pattern, @QueryParam(LIMIT) @DefaultValue("0") int limit,
+			@QueryParam(CURSOR) String cursor);
 }
@@ -5,6 +5,7 @@ import java.util.List;
 import jakarta.jws.WebMethod;
 import jakarta.jws.WebService;
 import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
 
 @WebService(serviceName=SoapDirectory.NAME, targetNamespace=SoapDirectory.NAMESPACE, endpointInterface=SoapDirectory.INTERFACE)
 public interface SoapDirectory {
@@ -32,6 +33,9 @@ public interface SoapDirectory {
 	@WebMethod
 	List<FileInfo> lsFile(String userId, String password) throws DirectoryException;
 
+	@WebMethod
+	FileInfoPage lsFilePage(String userId, String password, int limit, String cursor) throws DirectoryException;
+
 	@WebMethod
 	void deleteUserFiles(String userId, String password, String token) throws DirectoryException;
 }
@@ -5,6 +5,7 @@ import java.util.List;
 import jakarta.jws.WebMethod;
 import jakarta.jws.WebService;
 import tp1.api.User;
+import tp1.api.UserPage;
 
 @WebService(serviceName=SoapUsers.NAME, targetNamespace=SoapUsers.NAMESPACE, endpointInterface=SoapUsers.INTERFACE)
 public interface SoapUsers {
@@ -54,4 +55,7 @@ public interface SoapUsers {
 	 */
 	@WebMethod
 	List<User> searchUsers(String pattern) throws UsersException;	
+
+	@WebMethod
+	UserPage searchUsersPage(String pattern, int limit, String cursor) throws UsersException;
 }
@@ -10,6 +10,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 
 import tp1.api.service.java.Result.ErrorCode;
+import tp1.impl.clients.common.ReplicaSelector;
 import tp1.impl.discovery.Discovery;
 
 public class ClientFactory<T> {
@@ -44,9 +45,15 @@ public class ClientFactory<T> {
 			});
 	
 	
+	private final ReplicaSelector selector = new ReplicaSelector();
+	private volatile boolean subscribed;
+
+	/**
+	 * Returns a client of the server of this service expected to answer fastest.
+	 */
 	public T get() {
-		URI[] uris = Discovery.getInstance().findUrisOf(serviceName, 1);
-		return get(uris[0]);
+		URI[] uris = discovery().findUrisOf(serviceName, 1);
+		return get(selector.select(Arrays.asList(uris)));
 	}
 	
 	public T get(URI uri) {
@@ -64,6 +71,31 @@ public class ClientFactory<T> {
 	}
 	
 	public List<URI> all()  {
-		return Arrays.asList(Discovery.getInstance().findUrisOf(serviceName, 1));
-	}	
+		return Arrays.asList(discovery().findUrisOf(serviceName, 1));
+	}
+
+	/**
+	 * Registers a listener for the servers of this service joining and leaving.
+	 */
+	public void subscribe(Discovery.Listener listener) {
+		discovery().subscribe(serviceName, listener);
+	}
+
+	/*
+	 * Drops the clients of servers that are gone, once subscribed to discovery.
+	 */
+	private Discovery discovery() {
+		var discovery = Discovery.getInstance();
+		if (!subscribed)
+			synchronized (this) {
+				if (!subscribed) {
+					discovery.subscribe(serviceName, (uri, joined) -> {
+						if (!joined)
+							clients.invalidate(uri);
+					});
+					subscribed = true;
+				}
+			}
+		return discovery;
+	}
 }
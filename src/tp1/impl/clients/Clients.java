@@ -17,19 +17,19 @@ public class Clients {
 
 	public static final ClientFactory<Directory> DirectoryClients = new ClientFactory<>(
 			Directory.SERVICE_NAME, 
-			(u) -> new RetryDirectoryClient( new RestDirectoryClient(u)), 
-			(u) -> new RetryDirectoryClient( new SoapDirectoryClient(u))
+			(u) -> new RetryDirectoryClient(u, new RestDirectoryClient(u)), 
+			(u) -> new RetryDirectoryClient(u, new SoapDirectoryClient(u))
 	);
 
 	public static final ClientFactory<Files> FilesClients = new ClientFactory<>(
 			Files.SERVICE_NAME, 
-			(u) -> new RetryFilesClient(new RestFilesClient(u)),
-			(u) -> new RetryFilesClient(new SoapFilesClient(u))
+			(u) -> new RetryFilesClient(u, new RestFilesClient(u)),
+			(u) -> new RetryFilesClient(u, new SoapFilesClient(u))
 	);
 
 	public static final ClientFactory<Users> UsersClients = new ClientFactory<>(
 			Users.SERVICE_NAME, 
-			(u) -> new RetryUsersClient(new RestUsersClient(u)),
-			(u) -> new RetryUsersClient(new SoapUsersClient(u))
+			(u) -> new RetryUsersClient(u, new RestUsersClient(u)),
+			(u) -> new RetryUsersClient(u, new SoapUsersClient(u))
 	);
 }
@@ -0,0 +1,128 @@
+package tp1.impl.clients.common;
+
+import java.net.URI;
+import java.util.logging.Logger;
+
+/**
+ *
+ * Stops calling a server that keeps failing.
+ *
+ * Closed, calls go through; after several consecutive failures, or once most of the
+ * recent calls failed, the breaker opens and calls fail fast for a cool-down period
+ * (-Dclients.cooldown, in ms). Then it is half-open: a single probe call goes through,
+ * closing the breaker if it succeeds or opening it again, for twice as long, if it fails.
+ *
+ */
+class CircuitBreaker {
+	private static Logger Log = Logger.getLogger(CircuitBreaker.class.getName());
+
+	static final String COOLDOWN = "clients.cooldown";
+	static final long DEFAULT_COOLDOWN = 10000;
+	static final long MAX_COOLDOWN = 60000;
+	static final int MAX_FAILURES = 3;
+	static final double MAX_FAILURE_RATE = 0.5;
+	static final int MIN_CALLS = 10;
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * What a caller was allowed to do: not to call, to call, or to call as the probe of a half-open breaker.
+	 */
+	enum Permit {
+		DENIED, CALL, PROBE
+	}
+
+	final URI server;
+	final long cooldown = Long.getLong(COOLDOWN, DEFAULT_COOLDOWN);
+
+	private State state = State.CLOSED;
+	private int failures;
+	private int calls;
+	private long openedFor;
+	private long openUntil;
+	private boolean probing;
+
+	CircuitBreaker(URI server) {
+		this.server = server;
+	}
+
+	/**
+	 * Whether a call may go through now; in the half-open state, only the first caller
+	 * is let through, as the probe. The outcome of the call is reported with the permit.
+	 */
+	synchronized Permit acquire() {
+		switch (state) {
+		case CLOSED:
+			return Permit.CALL;
+		case OPEN:
+			if (System.currentTimeMillis() < openUntil)
+				return Permit.DENIED;
+			state = State.HALF_OPEN;
+			probing = false;
+			return claimProbe();
+		default:
+			return claimProbe();
+		}
+	}
+
+	/**
+	 * Like acquire, but without claiming the probe: false if calls fail fast now.
+	 */
+	synchronized boolean available() {
+		return switch (state) {
+		case CLOSED -> true;
+		case OPEN -> System.currentTimeMillis() >= openUntil;
+		case HALF_OPEN -> !probing;
+		};
+	}
+
+	/**
+	 * Records the outcome of a call. Only the probe decides the state of a half-open breaker;
+	 * calls let through before the breaker opened no longer count.
+	 *
+	 * @param failureRate - the recent failure rate of the calls to the server.
+	 */
+	synchronized void record(Permit permit, boolean ok, double failureRate) {
+		if (permit == Permit.PROBE) {
+			probing = false;
+			if (ok) {
+				Log.info(String.format("Closing circuit of %s\n", server));
+				close();
+			} else
+				open(Math.min(MAX_COOLDOWN, 2 * openedFor));
+		} else if (permit == Permit.CALL && state == State.CLOSED) {
+			calls++;
+			failures = ok ? 0 : failures + 1;
+			if (failures >= MAX_FAILURES || (!ok && calls >= MIN_CALLS && failureRate > MAX_FAILURE_RATE))
+				open(cooldown);
+		}
+	}
+
+	synchronized State state() {
+		return state;
+	}
+
+	private Permit claimProbe() {
+		if (probing)
+			return Permit.DENIED;
+		probing = true;
+		return Permit.PROBE;
+	}
+
+	private void open(long period) {
+		state = State.OPEN;
+		failures = 0;
+		openedFor = period;
+		openUntil = System.currentTimeMillis() + period;
+		Log.info(String.format("Opening circuit of %s for %d ms\n", server, period));
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		failures = 0;
+		calls = 0;
+		openedFor = 0;
+	}
+}
@@ -0,0 +1,119 @@
+package tp1.impl.clients.common;
+
+import static tp1.api.service.java.Result.error;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import tp1.api.service.java.Result;
+import tp1.api.service.java.Result.ErrorCode;
+
+/**
+ *
+ * Reads data from the first of several replicas to answer.
+ *
+ * The replicas are tried in order. If a replica fails, the next one is called right
+ * away; if it is slow, that is, it has not answered within the 95th percentile of its
+ * recent latency, the next one is called as well (hedging), and the first success wins.
+ * At most two calls run at a time.
+ *
+ * The calls still running once a read is answered are interrupted, so that they are not
+ * retried; a call blocked on the network cannot be aborted, though, so it completes or
+ * times out in the background, and its result is discarded.
+ *
+ * Hedging is disabled with -Dclients.hedge=false, leaving only the fail over. The delay
+ * used for servers without recent calls is set with -Dclients.hedgeDelay, in ms.
+ *
+ */
+public class HedgedRead {
+	private static Logger Log = Logger.getLogger(HedgedRead.class.getName());
+
+	static final String HEDGE = "clients.hedge";
+	static final String HEDGE_DELAY = "clients.hedgeDelay";
+	static final long DEFAULT_HEDGE_DELAY = 200;
+	static final long MIN_HEDGE_DELAY = 5;
+	static final int MAX_CALLS = 2;
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool((r) -> {
+		var t = new Thread(r, "hedged-read");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * @param servers - the servers holding the replicas, in order of preference.
+	 * @param read    - reads the data from a server.
+	 * @return the first successful result, or the error of the last replica tried.
+	 */
+	public static <T> Result<T> read(List<URI> servers, Function<URI, Result<T>> read) {
+		if (servers.isEmpty())
+			return error(ErrorCode.NOT_FOUND);
+
+		var calls = new ExecutorCompletionService<Result<T>>(executor);
+		var running = new ArrayList<Future<Result<T>>>();
+		Result<T> last = error(ErrorCode.NOT_FOUND);
+		int next = 0;
+		try {
+			running.add(calls.submit(call(servers.get(next++), read)));
+			while (!running.isEmpty()) {
+				Future<Result<T>> done;
+				if (next < servers.size() && running.size() < MAX_CALLS) {
+					done = calls.poll(hedgeDelay(servers.get(next - 1)), TimeUnit.MILLISECONDS);
+					if (done == null) {
+						Log.fine(String.format("Hedging read to %s\n", servers.get(next)));
+						running.add(calls.submit(call(servers.get(next++), read)));
+						continue;
+					}
+				} else
+					done = calls.take();
+
+				running.remove(done);
+				last = resultOf(done);
+				if (last.isOK())
+					return last;
+				if (next < servers.size())
+					running.add(calls.submit(call(servers.get(next++), read)));
+			}
+			return last;
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			return error(ErrorCode.TIMEOUT);
+		} finally {
+			running.forEach(f -> f.cancel(true));
+		}
+	}
+
+	/*
+	 * The result of a call that completed; a call that threw fails like one that returned an error,
+	 * so that the next replica is tried.
+	 */
+	private static <T> Result<T> resultOf(Future<Result<T>> done) throws InterruptedException {
+		try {
+			return done.get();
+		} catch (ExecutionException x) {
+			Log.warning(String.format("Read failed: %s\n", x.getCause()));
+			return error(ErrorCode.INTERNAL_ERROR);
+		}
+	}
+
+	private static <T> Callable<Result<T>> call(URI server, Function<URI, Result<T>> read) {
+		return () -> read.apply(server);
+	}
+
+	private static long hedgeDelay(URI server) {
+		if (!Boolean.parseBoolean(System.getProperty(HEDGE, "true")))
+			return Long.MAX_VALUE;
+		var p95 = ServerStats.of(server).percentile(95);
+		return p95 > 0 ? Math.max(MIN_HEDGE_DELAY, (long) Math.ceil(p95)) : Long.getLong(HEDGE_DELAY, DEFAULT_HEDGE_DELAY);
+	}
+}
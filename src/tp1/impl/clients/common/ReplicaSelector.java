@@ -0,0 +1,79 @@
+package tp1.impl.clients.common;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToDoubleFunction;
+
+/**
+ *
+ * Orders the servers holding replicas of the same data, best first.
+ *
+ * The first server is chosen with the power of two choices: the cheaper of two random
+ * servers, so that the load spreads over the fast servers instead of herding on the
+ * fastest one; the others follow in order of cost. Servers whose circuit breaker is
+ * open go last, so they are only used if nothing else is left.
+ *
+ * The cost of a server is its ServerStats cost; servers with no calls observed yet
+ * get the fallback cost, eg. derived from the load they announce, or 0 if none, so
+ * that they are tried.
+ *
+ */
+public class ReplicaSelector {
+
+	final ToDoubleFunction<URI> fallback;
+
+	public ReplicaSelector() {
+		this((u) -> Double.NaN);
+	}
+
+	/**
+	 * @param fallback - the cost of a server with no calls observed, or NaN if unknown.
+	 */
+	public ReplicaSelector(ToDoubleFunction<URI> fallback) {
+		this.fallback = fallback;
+	}
+
+	public List<URI> order(Collection<URI> servers) {
+		var healthy = new ArrayList<URI>();
+		var open = new ArrayList<URI>();
+		var costs = new HashMap<URI, Double>();
+		for (var uri : servers) {
+			(ServerStats.of(uri).available() ? healthy : open).add(uri);
+			costs.put(uri, costOf(uri));
+		}
+
+		Comparator<URI> byCost = Comparator.comparingDouble(costs::get);
+		var res = new ArrayList<URI>(servers.size());
+		if (healthy.size() >= 2) {
+			var rnd = ThreadLocalRandom.current();
+			int i = rnd.nextInt(healthy.size()), j = rnd.nextInt(healthy.size() - 1);
+			if (j >= i)
+				j++;
+			var first = costs.get(healthy.get(i)) <= costs.get(healthy.get(j)) ? healthy.get(i) : healthy.get(j);
+			res.add(first);
+			healthy.remove(first);
+		}
+		healthy.sort(byCost);
+		open.sort(byCost);
+		res.addAll(healthy);
+		res.addAll(open);
+		return res;
+	}
+
+	public URI select(Collection<URI> servers) {
+		var ordered = order(servers);
+		return ordered.isEmpty() ? null : ordered.get(0);
+	}
+
+	double costOf(URI server) {
+		var cost = ServerStats.of(server).cost();
+		if (Double.isNaN(cost))
+			cost = fallback.applyAsDouble(server);
+		return Double.isNaN(cost) ? 0 : cost;
+	}
+}
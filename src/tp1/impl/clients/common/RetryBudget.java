@@ -0,0 +1,33 @@
+package tp1.impl.clients.common;
+
+/**
+ *
+ * Bounds the retries sent to a server to a fraction of the calls made to it
+ * (-Dclients.retryRatio), so that retries do not multiply the load of a server
+ * that is already struggling.
+ *
+ * Each call deposits a fraction of a token, and each retry withdraws a whole one;
+ * the bucket starts full, allowing short bursts of retries to idle servers.
+ *
+ */
+class RetryBudget {
+
+	static final String RETRY_RATIO = "clients.retryRatio";
+	static final double DEFAULT_RETRY_RATIO = 0.2;
+	static final double MAX_TOKENS = 10;
+
+	final double ratio = Double.parseDouble(System.getProperty(RETRY_RATIO, Double.toString(DEFAULT_RETRY_RATIO)));
+
+	private double tokens = MAX_TOKENS;
+
+	synchronized void deposit() {
+		tokens = Math.min(MAX_TOKENS, tokens + ratio);
+	}
+
+	synchronized boolean withdraw() {
+		if (tokens < 1)
+			return false;
+		tokens -= 1;
+		return true;
+	}
+}
@@ -1,17 +1,27 @@
 package tp1.impl.clients.common;
 
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import tp1.api.service.java.Result;
 import tp1.api.service.java.Result.ErrorCode;
-import util.Sleep;
+import tp1.impl.clients.common.CircuitBreaker.Permit;
 
 /**
  * Shared client behavior.
  * 
  * Used to retry an operation in a loop.
  * 
+ * Retries back off exponentially, with jitter, and are bounded by the retry budget of
+ * the server; calls to a server whose circuit breaker is open fail fast, with TIMEOUT.
+ * Writes are not retried once they may have reached the server.
+ * 
  * @author smduarte
  *
  */
@@ -22,20 +32,77 @@ public abstract class RetryClient {
 	protected static final int CONNECT_TIMEOUT = 10000;
 
 	protected static final int RETRY_SLEEP = 100;
+	protected static final int MAX_RETRY_SLEEP = 2000;
 	protected static final int MAX_RETRIES = 3;
 
+	// Whether the call being made by the thread is a read, to choose its timeouts.
+	private static final ThreadLocal<Boolean> reading = ThreadLocal.withInitial(() -> false);
+
+	protected final ServerStats stats;
+
+	protected RetryClient() {
+		this(null);
+	}
+
+	/**
+	 * @param server - the server called, to record the latency and failures of the calls in its ServerStats,
+	 * and share its circuit breaker and retry budget.
+	 */
+	protected RetryClient(URI server) {
+		this.stats = server == null ? null : ServerStats.of(server);
+	}
+
 	protected <T> Result<T> reTry(Supplier<Result<T>> func) {
 		return this.reTry(func, MAX_RETRIES);
 	}
 
+	/**
+	 * Calls an idempotent operation, eg. a read, retrying it on any failure; its timeouts
+	 * adapt to the latency of the recent reads from the server.
+	 */
 	protected <T> Result<T> reTry(Supplier<Result<T>> func, int numRetries) {
+		return call(func, numRetries, true);
+	}
+
+	protected <T> Result<T> reTryWrite(Supplier<Result<T>> func) {
+		return this.reTryWrite(func, MAX_RETRIES);
+	}
+
+	/**
+	 * Calls an operation that must not be repeated once the server may have received it, eg. a
+	 * write: it is retried only if the server could not be reached, and with the default timeouts.
+	 */
+	protected <T> Result<T> reTryWrite(Supplier<Result<T>> func, int numRetries) {
+		return call(func, numRetries, false);
+	}
+
+	private <T> Result<T> call(Supplier<Result<T>> func, int numRetries, boolean read) {
+		if (stats != null)
+			stats.budget.deposit();
+
 		for (int i = 0; i < numRetries; i++)
 			try {
-				return func.get();
+				if (i > 0) {
+					// an interrupted call, eg. one that lost a hedged read, is not retried...
+					if (Thread.currentThread().isInterrupted() || (stats != null && !stats.budget.withdraw()))
+						break;
+					Thread.sleep(backoff(i));
+				}
+				var permit = stats == null ? Permit.CALL : stats.breaker.acquire();
+				if (permit == Permit.DENIED) {
+					Log.finest(">>>>>>>>Circuit open: " + stats.server + "\n");
+					break;
+				}
+				return measured(func, permit, read);
 			} catch (RuntimeException x) {
 				Log.finest(">>>>>>>>Exception: " + x.getMessage() + "\n");
-				Sleep.ms(RETRY_SLEEP);
+				if (!read && !unreachable(x))
+					break;
 			}
+		catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+			break;
+		}
 		catch (Exception x) {
 			x.printStackTrace();
 			Log.finest(">>>>>>>>Exception: " + x.getMessage() + "\n");
@@ -43,4 +110,61 @@ public abstract class RetryClient {
 		}
 		return Result.error(ErrorCode.TIMEOUT);
 	}
+
+	/*
+	 * True if the failure happened before the request reached the server, so that it can be sent again.
+	 */
+	static boolean unreachable(Throwable x) {
+		for (; x != null; x = x.getCause())
+			if (x instanceof ConnectException || x instanceof UnknownHostException || x instanceof NoRouteToHostException)
+				return true;
+			else if (x instanceof SocketTimeoutException && String.valueOf(x.getMessage()).contains("connect"))
+				return true;
+		return false;
+	}
+
+	/*
+	 * A random delay, in ms, up to RETRY_SLEEP doubled on each retry (full jitter), so that
+	 * the clients retrying together do not hit the server again in lockstep.
+	 */
+	static int backoff(int retry) {
+		int max = Math.min(MAX_RETRY_SLEEP, RETRY_SLEEP << Math.min(retry - 1, 16));
+		return ThreadLocalRandom.current().nextInt(max + 1);
+	}
+
+	/**
+	 * The read timeout for the call being made by this thread, in ms: adapted to the latency
+	 * observed of the server, for reads, or the default, for writes.
+	 */
+	protected int readTimeout() {
+		return stats == null || !reading.get() ? READ_TIMEOUT : stats.timeout(READ_TIMEOUT);
+	}
+
+	/**
+	 * The connect timeout for the call being made by this thread, in ms, as for readTimeout.
+	 */
+	protected int connectTimeout() {
+		return stats == null || !reading.get() ? CONNECT_TIMEOUT : stats.timeout(CONNECT_TIMEOUT);
+	}
+
+	/*
+	 * Calls func, recording the call in the stats of the server; exceptions and internal errors count as failures.
+	 */
+	private <T> Result<T> measured(Supplier<Result<T>> func, Permit permit, boolean read) {
+		if (stats == null)
+			return func.get();
+
+		var start = stats.begin();
+		boolean ok = false;
+		reading.set(read);
+		try {
+			var res = func.get();
+			ok = res.error() != ErrorCode.INTERNAL_ERROR && res.error() != ErrorCode.TIMEOUT;
+			return res;
+		} finally {
+			reading.set(false);
+			stats.end(start, ok, read);
+			stats.breaker.record(permit, ok, stats.failureRate());
+		}
+	}
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package tp1.impl.clients.common;
 
+import java.net.URI;
 import java.util.List;
 
 import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
 import tp1.api.service.java.Directory;
 import tp1.api.service.java.Result;
 
@@ -14,25 +16,30 @@ public class RetryDirectoryClient extends RetryClient implements Directory {
 		this.impl = impl;	
 	}
 
+	public RetryDirectoryClient( URI server, Directory impl ) {
+		super(server);
+		this.impl = impl;
+	}
+
 	@Override
 	public Result<FileInfo> writeFile(String filename, byte[] data, String userId, String password) {
-		return super.reTry( ()-> impl.writeFile(filename, data, userId, password));
+		return super.reTryWrite( ()-> impl.writeFile(filename, data, userId, password));
 	}
 
 	@Override
 	public Result<Void> deleteFile(String filename, String userId, String password) {
-		return super.reTry( ()-> impl.deleteFile(filename, userId, password));
+		return super.reTryWrite( ()-> impl.deleteFile(filename, userId, password));
 		
 	}
 
 	@Override
 	public Result<Void> shareFile(String filename, String userId, String userIdShare, String password) {
-		return super.reTry( ()-> impl.shareFile(filename, userId, userIdShare, password));
+		return super.reTryWrite( ()-> impl.shareFile(filename, userId, userIdShare, password));
 	}
 
 	@Override
 	public Result<Void> unshareFile(String filename, String userId, String userIdShare, String password) {
-		return super.reTry( ()-> impl.unshareFile(filename, userId, userIdShare, password));
+		return super.reTryWrite( ()-> impl.unshareFile(filename, userId, userIdShare, password));
 	}
 
 	@Override
@@ -45,9 +52,14 @@ public class RetryDirectoryClient extends RetryClient implements Directory {
 		return super.reTry( ()-> impl.lsFile(userId, password));
 	}
 
+	@Override
+	public Result<FileInfoPage> lsFilePage(String userId, String password, int limit, String cursor) {
+		return super.reTry( ()-> impl.lsFilePage(userId, password, limit, cursor));
+	}
+
 	@Override
 	public Result<Void> deleteUserFiles(String userId, String password, String token) {
-		return super.reTry( ()-> impl.deleteUserFiles(userId, password, token));
+		return super.reTryWrite( ()-> impl.deleteUserFiles(userId, password, token));
 	}
 	
 }
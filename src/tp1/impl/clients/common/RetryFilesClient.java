@@ -1,5 +1,8 @@
 package tp1.impl.clients.common;
 
+import java.io.InputStream;
+import java.net.URI;
+
 import tp1.api.service.java.Files;
 import tp1.api.service.java.Result;
 
@@ -11,6 +14,11 @@ public class RetryFilesClient extends RetryClient implements Files {
 		this.impl = impl;	
 	}
 
+	public RetryFilesClient( URI server, Files impl ) {
+		super(server);
+		this.impl = impl;
+	}
+
 	@Override
 	public Result<byte[]> getFile(String fileId, String token) {
 		return reTry( () -> impl.getFile(fileId, token));
@@ -18,18 +26,29 @@ public class RetryFilesClient extends RetryClient implements Files {
 
 	@Override
 	public Result<Void> deleteFile(String fileId, String token) {
-		return reTry( () -> impl.deleteFile(fileId, token));
+		return reTryWrite( () -> impl.deleteFile(fileId, token));
 	}
 
 	@Override
 	public Result<Void> writeFile(String fileId, byte[] data, String token) {
 		// We do not retry this operation more than once, here...
 		// In case of timeout, directory needs to try another server instead.
-		return reTry( () -> impl.writeFile(fileId, data, token), 1);
+		return reTryWrite( () -> impl.writeFile(fileId, data, token), 1);
+	}
+
+	@Override
+	public Result<InputStream> getFileStream(String fileId, String token) {
+		return reTry( () -> impl.getFileStream(fileId, token));
+	}
+
+	@Override
+	public Result<Void> writeFileStream(String fileId, InputStream data, String token) {
+		// A stream cannot be replayed, so this operation is never retried...
+		return reTryWrite( () -> impl.writeFileStream(fileId, data, token), 1);
 	}
 
 	@Override
 	public Result<Void> deleteUserFiles(String userId, String token) {
-		return reTry( () -> impl.deleteUserFiles(userId, token));
+		return reTryWrite( () -> impl.deleteUserFiles(userId, token));
 	}	
 }
@@ -1,8 +1,10 @@
 package tp1.impl.clients.common;
 
+import java.net.URI;
 import java.util.List;
 
 import tp1.api.User;
+import tp1.api.UserPage;
 import tp1.api.service.java.Result;
 import tp1.api.service.java.Users;
 
@@ -15,9 +17,14 @@ public class RetryUsersClient extends RetryClient implements Users {
 		this.impl = impl;	
 	}
 
+	public RetryUsersClient( URI server, Users impl ) {
+		super(server);
+		this.impl = impl;
+	}
+
 	@Override
 	public Result<String> createUser(User user) {
-		return reTry( () -> impl.createUser(user));
+		return reTryWrite( () -> impl.createUser(user));
 	}
 
 	@Override
@@ -27,7 +34,7 @@ public class RetryUsersClient extends RetryClient implements Users {
 
 	@Override
 	public Result<User> deleteUser(String userId, String password) {
-		return reTry( () -> impl.deleteUser(userId, password));		
+		return reTryWrite( () -> impl.deleteUser(userId, password));		
 	}
 
 	@Override
@@ -35,8 +42,13 @@ public class RetryUsersClient extends RetryClient implements Users {
 		return reTry( () -> impl.searchUsers(pattern));		
 	}
 
+	@Override
+	public Result<UserPage> searchUsersPage(String pattern, int limit, String cursor) {
+		return reTry( () -> impl.searchUsersPage(pattern, limit, cursor));
+	}
+
 	@Override
 	public Result<User> updateUser(String userId, String password, User user) {
-		return reTry( () -> impl.updateUser(userId, password, user));		
+		return reTryWrite( () -> impl.updateUser(userId, password, user));		
 	}
 }
@@ -0,0 +1,128 @@
+package tp1.impl.clients.common;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import util.LatencyStats;
+
+/**
+ *
+ * What this process observed of the calls it made to a server: moving averages (EWMA)
+ * of their latency and failure rate, the distribution of the latency of recent reads,
+ * and the number of calls outstanding.
+ *
+ * Each server also has the circuit breaker and the retry budget shared by all the clients
+ * of this process calling it, and a timeout for reads derived from the latency of its recent
+ * reads; writes can take much longer, eg. when they are replicated, so they are not used.
+ *
+ */
+public class ServerStats {
+
+	static final double ALPHA = 0.2;
+	static final String TIMEOUT_FACTOR = "clients.timeoutFactor";
+	static final double DEFAULT_TIMEOUT_FACTOR = 4;
+	static final int MIN_TIMEOUT = 1000;
+
+	private static final Map<URI, ServerStats> servers = new ConcurrentHashMap<>();
+
+	public static ServerStats of(URI server) {
+		return servers.computeIfAbsent(server, ServerStats::new);
+	}
+
+	final URI server;
+	final LatencyStats reads = new LatencyStats();
+	final CircuitBreaker breaker;
+	final RetryBudget budget = new RetryBudget();
+	final double timeoutFactor = Double.parseDouble(System.getProperty(TIMEOUT_FACTOR, Double.toString(DEFAULT_TIMEOUT_FACTOR)));
+
+	private int outstanding;
+	private double latency = -1;
+	private double failures;
+
+	private ServerStats(URI server) {
+		this.server = server;
+		this.breaker = new CircuitBreaker(server);
+	}
+
+	/**
+	 * Marks the start of a call.
+	 *
+	 * @return the start time, to pass to end.
+	 */
+	public synchronized long begin() {
+		outstanding++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of a call started with begin.
+	 *
+	 * @param ok   - false if the call failed, eg. timed out.
+	 * @param read - true if the call was an idempotent read.
+	 */
+	public void end(long start, boolean ok, boolean read) {
+		long nanos = System.nanoTime() - start;
+		if (read)
+			reads.record(nanos);
+		synchronized (this) {
+			outstanding--;
+			double ms = nanos / 1e6;
+			latency = latency < 0 ? ms : latency + ALPHA * (ms - latency);
+			failures += ALPHA * ((ok ? 0 : 1) - failures);
+		}
+	}
+
+	/**
+	 * False while the circuit breaker of the server fails calls fast.
+	 */
+	public boolean available() {
+		return breaker.available();
+	}
+
+	/**
+	 * The timeout for reads from the server, in ms: a multiple of the 99th percentile of the
+	 * latency of its recent reads (-Dclients.timeoutFactor), within [1 s, max]; max if no
+	 * read was observed recently.
+	 *
+	 * @param max - the timeout to use by default, in ms.
+	 */
+	public int timeout(int max) {
+		var p99 = reads.percentile(99);
+		if (p99 <= 0)
+			return max;
+		return (int) Math.min(max, Math.max(MIN_TIMEOUT, timeoutFactor * p99));
+	}
+
+	/**
+	 * The average latency, in ms, or -1 if no call has ended yet.
+	 */
+	public synchronized double latency() {
+		return latency;
+	}
+
+	/**
+	 * The given percentile, in ms, of the latency of recent reads, or 0 if none.
+	 */
+	public double percentile(double p) {
+		return reads.percentile(p);
+	}
+
+	public synchronized double failureRate() {
+		return failures;
+	}
+
+	public synchronized int outstanding() {
+		return outstanding;
+	}
+
+	/**
+	 * How long a new call is expected to take, in ms, accounting for the calls queued ahead of
+	 * it and for the calls that fail; NaN if no call has ended yet.
+	 */
+	public synchronized double cost() {
+		if (latency < 0)
+			return Double.NaN;
+		return latency * (outstanding + 1) / Math.max(0.05, 1 - failures);
+	}
+}
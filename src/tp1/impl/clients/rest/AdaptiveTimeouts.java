@@ -0,0 +1,31 @@
+package tp1.impl.clients.rest;
+
+import java.io.IOException;
+import java.util.function.IntSupplier;
+
+import org.glassfish.jersey.client.ClientProperties;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+
+/**
+ * 
+ * Sets the timeouts of each request, overriding those configured for the client, so that
+ * they follow the latency observed of the server.
+ *
+ */
+class AdaptiveTimeouts implements ClientRequestFilter {
+
+	final IntSupplier connectTimeout, readTimeout;
+
+	AdaptiveTimeouts(IntSupplier connectTimeout, IntSupplier readTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public void filter(ClientRequestContext request) throws IOException {
+		request.setProperty(ClientProperties.CONNECT_TIMEOUT, connectTimeout.getAsInt());
+		request.setProperty(ClientProperties.READ_TIMEOUT, readTimeout.getAsInt());
+	}
+}
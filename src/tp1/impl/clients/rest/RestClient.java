@@ -40,11 +40,22 @@ abstract class RestClient extends RetryClient {
 	protected final ClientConfig config;
 
 	public RestClient(URI uri, String path) {
+		this(uri, path, null);
+	}
+
+	/**
+	 * @param versionHeader - the header carrying the version of a replicated service, or null if not replicated.
+	 */
+	public RestClient(URI uri, String path, String versionHeader) {
+		super(uri);
 		this.uri = uri;
 		this.config = new ClientConfig();
 		this.config.property(ClientProperties.CONNECT_TIMEOUT, CONNECT_TIMEOUT);
 		this.config.property(ClientProperties.READ_TIMEOUT, READ_TIMEOUT);
 		this.config.property(ClientProperties.FOLLOW_REDIRECTS, true);
+		if (versionHeader != null)
+			this.config.register(new VersionTracker(path, versionHeader));
+		this.config.register(new AdaptiveTimeouts(this::connectTimeout, this::readTimeout));
 
 //		config.register(new LoggingFeature(Logger.getLogger(LoggingFeature.DEFAULT_LOGGER_NAME), Level.INFO, LoggingFeature.Verbosity.PAYLOAD_ANY, 10000));		  
 
@@ -88,6 +99,7 @@ abstract class RestClient extends RetryClient {
 		case 400 -> ErrorCode.BAD_REQUEST;
 		case 500 -> ErrorCode.INTERNAL_ERROR;
 		case 501 -> ErrorCode.NOT_IMPLEMENTED;
+		case 503 -> ErrorCode.TIMEOUT;
 		default -> ErrorCode.INTERNAL_ERROR;
 		};
 	}
@@ -1,24 +1,42 @@
 package tp1.impl.clients.rest;
 
+import static tp1.api.service.java.Result.error;
+import static tp1.api.service.java.Result.ok;
+import static tp1.impl.clients.Clients.FilesClients;
+
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.glassfish.jersey.client.ClientProperties;
+
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
 import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
 import tp1.api.service.java.Directory;
 import tp1.api.service.java.Result;
 import tp1.api.service.rest.RestDirectory;
+import tp1.impl.clients.common.HedgedRead;
 
 public class RestDirectoryClient extends RestClient implements Directory {
 
 
 	private static final String SHARE = "share";
+	private static final String FILES = "/files/";
+	private static final String TOKEN = "?token=";
+
+	/*
+	 * With -Dclients.smartReads=true, getFile reads from the file replicas itself, instead of following the redirect to one of them.
+	 */
+	static final boolean SMART_READS = Boolean.getBoolean("clients.smartReads");
 	
 	public RestDirectoryClient(URI serverUri) {
-		super(serverUri, RestDirectory.PATH);
+		super(serverUri, RestDirectory.PATH, RestDirectory.HEADER_VERSION);
 	}
 
 	@Override
@@ -73,11 +91,36 @@ public class RestDirectoryClient extends RestClient implements Directory {
 				.queryParam(RestDirectory.ACC_USER_ID, accUserId)
 				.queryParam(RestDirectory.PASSWORD, password)
 				.request()
+				.property(ClientProperties.FOLLOW_REDIRECTS, !SMART_READS)
 				.accept(MediaType.APPLICATION_OCTET_STREAM)
 				.get();
+
+		if (SMART_READS && r.getStatus() == Status.TEMPORARY_REDIRECT.getStatusCode()) {
+			var replicas = r.getHeaderString(RestDirectory.HEADER_REPLICAS);
+			var location = r.getHeaderString(HttpHeaders.LOCATION);
+			r.close();
+			return readReplicas(replicas != null ? replicas.split(",") : new String[] { location });
+		}
 		return super.toJavaResult(r, new GenericType<byte[]>() {});
 	}
 
+	/*
+	 * Reads the file from the replicas the directory redirected to, hedging across them.
+	 */
+	private Result<byte[]> readReplicas(String[] urls) {
+		var servers = new ArrayList<URI>();
+		String fileId = null, token = null;
+		for (var url : urls) {
+			int i = url.indexOf(FILES), q = url.indexOf(TOKEN);
+			servers.add(URI.create(url.substring(0, i)));
+			fileId = url.substring(i + FILES.length(), q);
+			token = url.substring(q + TOKEN.length());
+		}
+		var id = fileId;
+		var tok = token;
+		return HedgedRead.read(servers, (u) -> FilesClients.get(u).getFile(id, tok));
+	}
+
 	@Override
 	public Result<List<FileInfo>> lsFile(String userId, String password) {
 		Response r = target.path(userId)
@@ -88,6 +131,23 @@ public class RestDirectoryClient extends RestClient implements Directory {
 		return super.toJavaResult(r, new GenericType<List<FileInfo>>() {});
 	}
 
+	@Override
+	public Result<FileInfoPage> lsFilePage(String userId, String password, int limit, String cursor) {
+		var target = this.target.path(userId)
+				.queryParam(RestDirectory.PASSWORD, password)
+				.queryParam(RestDirectory.LIMIT, limit);
+		if (cursor != null)
+			target = target.queryParam(RestDirectory.CURSOR, cursor);
+
+		Response r = target.request()
+				.accept(MediaType.APPLICATION_JSON)
+				.get();
+
+		var next = r.getHeaderString(RestDirectory.NEXT_CURSOR);
+		var res = super.toJavaResult(r, new GenericType<List<FileInfo>>() {});
+		return res.isOK() ? ok(new FileInfoPage(res.value(), next)) : error(res.error());
+	}
+
 	@Override
 	public Result<Void> deleteUserFiles(String userId, String password, String token) {
 		Response r = target.path(userId)
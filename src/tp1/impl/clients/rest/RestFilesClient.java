@@ -1,11 +1,18 @@
 package tp1.impl.clients.rest;
 
+import static tp1.api.service.java.Result.ok;
+
+import java.io.InputStream;
 import java.net.URI;
 
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
 import tp1.api.service.java.Files;
 import tp1.api.service.java.Result;
 import tp1.api.service.rest.RestFiles;
@@ -48,6 +55,32 @@ public class RestFilesClient extends RestClient implements Files {
 		return super.toJavaResult(r);
 	}
 
+	@Override
+	public Result<InputStream> getFileStream(String fileId, String token) {
+		Response r = target.path(fileId)
+				.queryParam(RestFiles.TOKEN, token)
+				.request()
+				.accept( MediaType.APPLICATION_OCTET_STREAM)
+				.get();
+
+		// On success, the response is only released when the caller closes the stream...
+		if (r.getStatusInfo().toEnum() == Status.OK)
+			return ok(r.readEntity(InputStream.class));
+		else
+			return super.toJavaResult(r, new GenericType<InputStream>() {});
+	}
+
+	@Override
+	public Result<Void> writeFileStream(String fileId, InputStream data, String token) {
+		Response r = target.path(fileId)
+				.queryParam(RestFiles.TOKEN, token)
+				.request()
+				.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED)
+				.post(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
+
+		return super.toJavaResult(r);
+	}
+
 	@Override
 	public Result<Void> deleteUserFiles(String userId, String token) {
 		Response r = target.path(USER)
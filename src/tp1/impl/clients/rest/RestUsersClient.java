@@ -1,5 +1,8 @@
 package tp1.impl.clients.rest;
 
+import static tp1.api.service.java.Result.error;
+import static tp1.api.service.java.Result.ok;
+
 import java.net.URI;
 import java.util.List;
 
@@ -8,6 +11,7 @@ import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import tp1.api.User;
+import tp1.api.UserPage;
 import tp1.api.service.java.Result;
 import tp1.api.service.java.Users;
 import tp1.api.service.rest.RestUsers;
@@ -15,7 +19,7 @@ import tp1.api.service.rest.RestUsers;
 public class RestUsersClient extends RestClient implements Users {
 
 	public RestUsersClient(URI serverUri) {
-		super(serverUri, RestUsers.PATH);
+		super(serverUri, RestUsers.PATH, RestUsers.HEADER_VERSION);
 	}
 
 	@Override
@@ -71,4 +75,21 @@ public class RestUsersClient extends RestClient implements Users {
 		
 		return super.toJavaResult(r, new GenericType<List<User>>() {});
 	}
+
+	@Override
+	public Result<UserPage> searchUsersPage(String pattern, int limit, String cursor) {
+		var target = this.target
+				.queryParam(RestUsers.QUERY, pattern)
+				.queryParam(RestUsers.LIMIT, limit);
+		if (cursor != null)
+			target = target.queryParam(RestUsers.CURSOR, cursor);
+
+		Response r = target.request()
+				.accept(MediaType.APPLICATION_JSON)
+				.get();
+
+		var next = r.getHeaderString(RestUsers.NEXT_CURSOR);
+		var res = super.toJavaResult(r, new GenericType<List<User>>() {});
+		return res.isOK() ? ok(new UserPage(res.value(), next)) : error(res.error());
+	}
 }
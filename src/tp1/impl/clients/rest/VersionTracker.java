@@ -0,0 +1,51 @@
+package tp1.impl.clients.rest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+
+/**
+ * 
+ * Tracks the highest version of each service returned by its replicas, and sends it
+ * with every request to the service, so that replicas lagging behind what this process
+ * already observed wait before serving it.
+ * 
+ * The version is shared by all the clients of the same service, whichever replica they
+ * talk to, and sent in the version header of that service.
+ *
+ */
+class VersionTracker implements ClientRequestFilter, ClientResponseFilter {
+
+	private static final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+	final String header;
+	final AtomicLong version;
+
+	VersionTracker(String service, String header) {
+		this.header = header;
+		this.version = versions.computeIfAbsent(service, (k) -> new AtomicLong(-1L));
+	}
+
+	@Override
+	public void filter(ClientRequestContext request) throws IOException {
+		var v = version.get();
+		if (v >= 0)
+			request.getHeaders().putSingle(header, v);
+	}
+
+	@Override
+	public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+		var v = response.getHeaderString(header);
+		if (v != null)
+			try {
+				version.accumulateAndGet(Long.parseLong(v), Math::max);
+			} catch (NumberFormatException x) {
+			}
+	}
+}
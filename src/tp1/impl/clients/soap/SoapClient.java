@@ -36,6 +36,7 @@ abstract class SoapClient<T> extends RetryClient {
 	protected final T impl;
 	
 	public SoapClient(URI uri, Supplier<T> func) {
+		super(uri);
 		this.uri = uri;
 
 		//This allows client code executed by this process to ignore hostname verification
@@ -45,9 +46,10 @@ abstract class SoapClient<T> extends RetryClient {
 		this.setTimeouts((BindingProvider) impl);
 	}
 
+	// The timeouts follow the latency observed of the server, so they are set again before each call.
 	private void setTimeouts(BindingProvider port ) {
-		port.getRequestContext().put(BindingProviderProperties.CONNECT_TIMEOUT, CONNECT_TIMEOUT);
-		port.getRequestContext().put(BindingProviderProperties.REQUEST_TIMEOUT, READ_TIMEOUT);		
+		port.getRequestContext().put(BindingProviderProperties.CONNECT_TIMEOUT, connectTimeout());
+		port.getRequestContext().put(BindingProviderProperties.REQUEST_TIMEOUT, readTimeout());		
 	}
 
 	
@@ -55,11 +57,12 @@ abstract class SoapClient<T> extends RetryClient {
 
 	protected <R> Result<R> toJavaResult(ResultSupplier<R> supplier) {
 		try {
+			setTimeouts((BindingProvider) impl);
 			return ok( supplier.get());	
 		} 
 		catch (Exception e) {			
 			if( e instanceof WebServiceException ) {
-				throw new RuntimeException( e.getMessage() );
+				throw new RuntimeException( e.getMessage(), e );
 			}			
 			return error(getErrorCodeFrom(e));
 		}
@@ -67,12 +70,13 @@ abstract class SoapClient<T> extends RetryClient {
 
 	protected <R> Result<R> toJavaResult( VoidSupplier r) {
 		try {
+			setTimeouts((BindingProvider) impl);
 			r.run();
 			return ok();
 		}
 		catch (Exception e) {
 			if( e instanceof WebServiceException ) {
-				throw new RuntimeException( e.getMessage() );				
+				throw new RuntimeException( e.getMessage(), e );				
 			}
 			return error(getErrorCodeFrom(e));
 		}
@@ -7,6 +7,7 @@ import javax.xml.namespace.QName;
 
 import jakarta.xml.ws.Service;
 import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
 import tp1.api.service.java.Directory;
 import tp1.api.service.java.Result;
 import tp1.api.service.soap.SoapDirectory;
@@ -52,6 +53,11 @@ public class SoapDirectoryClient extends SoapClient<SoapDirectory> implements Di
 		return super.toJavaResult(() -> impl.lsFile(userId, password));
 	}
 
+	@Override
+	public Result<FileInfoPage> lsFilePage(String userId, String password, int limit, String cursor) {
+		return super.toJavaResult(() -> impl.lsFilePage(userId, password, limit, cursor));
+	}
+
 	@Override
 	public Result<Void> deleteUserFiles(String userId, String password, String token) {
 		return super.toJavaResult(() -> impl.deleteUserFiles(userId, password, token));
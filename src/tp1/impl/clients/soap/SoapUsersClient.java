@@ -7,6 +7,7 @@ import javax.xml.namespace.QName;
 
 import jakarta.xml.ws.Service;
 import tp1.api.User;
+import tp1.api.UserPage;
 import tp1.api.service.java.Result;
 import tp1.api.service.java.Users;
 import tp1.api.service.soap.SoapUsers;
@@ -46,4 +47,9 @@ public class SoapUsersClient extends SoapClient<SoapUsers> implements Users {
 	public Result<List<User>> searchUsers(String pattern) {
 		return super.toJavaResult(() -> impl.searchUsers(pattern));
 	}
+
+	@Override
+	public Result<UserPage> searchUsersPage(String pattern, int limit, String cursor) {
+		return super.toJavaResult(() -> impl.searchUsersPage(pattern, limit, cursor));
+	}
 }
@@ -11,9 +11,14 @@ import java.net.SocketException;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import util.Sleep;
@@ -22,6 +27,15 @@ import util.Sleep;
  * Performs service discovery. Used by servers to announce themselves, and clients
  * to discover services on demand.
  * 
+ * Each discovered uri is kept with the time it was last announced, and dropped once
+ * it has not been announced for DISCOVERY_TIMEOUT ms. Callers waiting for a service
+ * are woken up as soon as enough uris are known, and listeners are told when a uri
+ * joins or leaves a service.
+ * 
+ * Announcements may carry the load of the server, in a versioned format:
+ * <service> \t <uri> [\t <version> \t <load fields>...]. The latest load of each
+ * server can be queried with loadOf.
+ * 
  * @author smduarte
  *
  */
@@ -33,7 +47,21 @@ public class Discovery {
 	static final int DISCOVERY_TIMEOUT = 10000;
 	static final InetSocketAddress DISCOVERY_ADDR = new InetSocketAddress("226.226.226.226", 2262);
 
-	final Map<String, Set<URI>> discoveries = new ConcurrentHashMap<>();
+	/**
+	 * Told when a uri joins or leaves a service. Called from the discovery threads, so it should be quick.
+	 */
+	public interface Listener {
+		void changed(URI uri, boolean joined);
+	}
+
+	/*
+	 * When a uri was last announced, and the load it announced, if any.
+	 */
+	record Seen(long time, ServerLoad load) {
+	}
+
+	final Map<String, Map<URI, Seen>> discoveries = new ConcurrentHashMap<>();
+	final Map<String, List<Listener>> listeners = new ConcurrentHashMap<>();
 	
 	static Discovery instance;
 	
@@ -41,6 +69,7 @@ public class Discovery {
 		if( instance == null ) {
 			instance = new Discovery();
 			new Thread( instance::listener ).start();
+			instance.startEviction();
 		}
 		return instance;
 	}
@@ -52,15 +81,29 @@ public class Discovery {
 	 * @param serviceURI - the uri of the service
 	 */
 	public void announce(String serviceName, String serviceURI) {
-		Log.info(String.format("Starting Discovery announcements on: %s for: %s -> %s\n", DISCOVERY_ADDR, serviceName, serviceURI));
+		announce(serviceName, serviceURI, () -> null);
+	}
 
-		byte[] pktBytes = String.format("%s%s%s", serviceName, DELIMITER, serviceURI).getBytes();
+	/**
+	 * Continuously announces a service given its name and uri, along with its current load
+	 * 
+	 * @param serviceName the composite service name: <domain:service>
+	 * @param serviceURI - the uri of the service
+	 * @param load - the current load of the server, or null if unknown
+	 */
+	public void announce(String serviceName, String serviceURI, Supplier<ServerLoad> load) {
+		Log.info(String.format("Starting Discovery announcements on: %s for: %s -> %s\n", DISCOVERY_ADDR, serviceName, serviceURI));
 
-		DatagramPacket pkt = new DatagramPacket(pktBytes, pktBytes.length, DISCOVERY_ADDR);
 		new Thread(() -> {
 			try (DatagramSocket ds = new DatagramSocket()) {
 				for (;;) {
-					ds.send(pkt);
+					var current = load.get();
+					var msg = String.format("%s%s%s", serviceName, DELIMITER, serviceURI);
+					if (current != null)
+						msg += DELIMITER + current.encode(DELIMITER);
+
+					byte[] pktBytes = msg.getBytes();
+					ds.send(new DatagramPacket(pktBytes, pktBytes.length, DISCOVERY_ADDR));
 					Thread.sleep(DISCOVERY_PERIOD);
 				}
 			} catch (Exception e) {
@@ -70,12 +113,8 @@ public class Discovery {
 	}
 
 	/**
-	 * Listens for the given composite service name, blocks until a minimum number of replies is collected.
-	 * @param serviceName - the composite name of the service
-	 * @param minRepliesNeeded - the minimum number of replies required.
-	 * @return the discovery results as an array
+	 * Listens for the announcements of all services.
 	 */
-	
 	public void listener() {
 		Log.info(String.format("Starting discovery on multicast group: %s, port: %d\n", DISCOVERY_ADDR.getAddress(), DISCOVERY_ADDR.getPort()));
 
@@ -93,12 +132,15 @@ public class Discovery {
 					var tokens = new String(pkt.getData(), 0, pkt.getLength()).split(DELIMITER);
 					Log.finest( "Received: " + Arrays.asList(tokens) + "\n");
 					
-					if (tokens.length == 2) {
+					if (tokens.length >= 2) {
 						
 						var name = tokens[0];
 						var uri = URI.create( tokens[1]);
+						var load = ServerLoad.decode(tokens, 2);
 						
-						discoveries.computeIfAbsent(name, (k) -> ConcurrentHashMap.newKeySet()).add( uri );
+						var seen = discoveries.computeIfAbsent(name, (k) -> new ConcurrentHashMap<>());
+						if (seen.put(uri, new Seen(System.currentTimeMillis(), load)) == null)
+							joined(name, uri);
 					}
 				} catch (IOException e) {
 					Sleep.ms(DISCOVERY_PERIOD);
@@ -111,16 +153,108 @@ public class Discovery {
 	}
 	
 	
+	/**
+	 * Returns the uris of the given service, blocking until a minimum number of them is known.
+	 * @param serviceName - the composite name of the service
+	 * @param minRepliesNeeded - the minimum number of replies required.
+	 * @return the discovery results as an array
+	 */
 	public URI[] findUrisOf(String serviceName, int minRepliesNeeded) {
 		Log.info(String.format("Discovery.findUrisOf( serviceName: %s, minRequired: %d\n", serviceName, minRepliesNeeded));
 		
-		for(;;) {
-			var results = discoveries.get( serviceName );
-			if( results != null && results.size() >= minRepliesNeeded )
-				return results.toArray( new URI[ results.size() ]);
-			else
-				Sleep.ms( DISCOVERY_PERIOD );
+		return findUrisOf(serviceName, minRepliesNeeded, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the uris of the given service, blocking until a minimum number of them is known,
+	 * for up to timeout ms.
+	 * 
+	 * @return the uris known when the minimum was reached, or the wait timed out.
+	 */
+	public synchronized URI[] findUrisOf(String serviceName, int minRepliesNeeded, long timeout) {
+		var deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+		for (long now; knownUrisOf(serviceName).length < minRepliesNeeded && (now = System.currentTimeMillis()) < deadline;) {
+			try {
+				this.wait(deadline - now);
+			} catch (InterruptedException e) {
+			}
 		}
+		return knownUrisOf(serviceName);
+	}
+
+	/**
+	 * Returns the uris of the given service known at this time, without waiting.
+	 */
+	public URI[] knownUrisOf(String serviceName) {
+		var results = discoveries.get(serviceName);
+		return results == null ? new URI[0] : results.keySet().toArray(new URI[0]);
+	}
+
+	/**
+	 * Returns the load last announced by a server of the given service, or null if unknown.
+	 */
+	public ServerLoad loadOf(String serviceName, URI uri) {
+		var seen = discoveries.getOrDefault(serviceName, Map.of()).get(uri);
+		return seen == null ? null : seen.load();
+	}
+
+	/**
+	 * Returns the load last announced by each server of the given service that announces it.
+	 */
+	public Map<URI, ServerLoad> loadsOf(String serviceName) {
+		var res = new HashMap<URI, ServerLoad>();
+		discoveries.getOrDefault(serviceName, Map.of()).forEach((uri, seen) -> {
+			if (seen.load() != null)
+				res.put(uri, seen.load());
+		});
+		return res;
+	}
+
+	/**
+	 * Registers a listener for the uris joining and leaving the given service; it is first told
+	 * about the uris already known.
+	 */
+	public void subscribe(String serviceName, Listener listener) {
+		listeners.computeIfAbsent(serviceName, (k) -> new CopyOnWriteArrayList<>()).add(listener);
+		for (var uri : knownUrisOf(serviceName))
+			listener.changed(uri, true);
+	}
+
+	private void joined(String serviceName, URI uri) {
+		Log.info(String.format("Discovered: %s -> %s\n", serviceName, uri));
+		synchronized (this) {
+			this.notifyAll();
+		}
+		fireChanged(serviceName, uri, true);
+	}
+
+	/*
+	 * Periodically drops the uris that are no longer announced.
+	 */
+	private void startEviction() {
+		var evictor = Executors.newSingleThreadScheduledExecutor((r) -> {
+			var t = new Thread(r, "discovery-eviction");
+			t.setDaemon(true);
+			return t;
+		});
+		evictor.scheduleWithFixedDelay(() -> {
+			var expired = System.currentTimeMillis() - DISCOVERY_TIMEOUT;
+			discoveries.forEach((name, seen) -> seen.forEach((uri, last) -> {
+				if (last.time() < expired && seen.remove(uri, last)) {
+					Log.info(String.format("Evicted: %s -> %s\n", name, uri));
+					fireChanged(name, uri, false);
+				}
+			}));
+		}, DISCOVERY_PERIOD, DISCOVERY_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	private void fireChanged(String serviceName, URI uri, boolean joined) {
+		for (var l : listeners.getOrDefault(serviceName, List.of()))
+			try {
+				l.changed(uri, joined);
+			} catch (RuntimeException x) {
+				x.printStackTrace();
+			}
 	}
 
 	static private void joinGroupInAllInterfaces(MulticastSocket ms) throws SocketException {
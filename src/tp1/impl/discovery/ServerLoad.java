@@ -0,0 +1,46 @@
+package tp1.impl.discovery;
+
+/**
+ * The load of a server, as announced with it in Discovery.
+ *
+ * @param freeBytes - free disk space, in bytes.
+ * @param files     - files stored by the server, or -1 if it does not store files.
+ * @param inFlight  - requests being served.
+ * @param p99       - 99th percentile of the latency of recent requests, in ms.
+ */
+public record ServerLoad(long freeBytes, long files, int inFlight, double p99) {
+
+	static final String VERSION = "2";
+
+	public ServerLoad withFiles(long files) {
+		return new ServerLoad(freeBytes, files, inFlight, p99);
+	}
+
+	/**
+	 * How long a new request is expected to wait, relative to other servers.
+	 */
+	public double cost() {
+		return (inFlight + 1) * Math.max(p99, 1.0);
+	}
+
+	String encode(String delimiter) {
+		return String.join(delimiter, VERSION, Long.toString(freeBytes), Long.toString(files), Integer.toString(inFlight),
+				Double.toString(p99));
+	}
+
+	/**
+	 * Decodes the load from the tokens of an announcement, starting at the given one.
+	 *
+	 * @return the load, or null if absent, malformed or of an unknown version.
+	 */
+	static ServerLoad decode(String[] tokens, int first) {
+		if (tokens.length < first + 5 || !tokens[first].equals(VERSION))
+			return null;
+		try {
+			return new ServerLoad(Long.parseLong(tokens[first + 1]), Long.parseLong(tokens[first + 2]),
+					Integer.parseInt(tokens[first + 3]), Double.parseDouble(tokens[first + 4]));
+		} catch (NumberFormatException x) {
+			return null;
+		}
+	}
+}
@@ -1,13 +1,19 @@
 package tp1.impl.servers.common;
 
+import java.io.File;
 import java.util.logging.Logger;
 
+import tp1.impl.discovery.ServerLoad;
+import util.LatencyStats;
+
 public abstract class AbstractServer {
 	protected static final String INETADDR_ANY = "0.0.0.0";
+	protected static final String DATA_ROOT = "/tmp";
 
 	final protected int port;
 	final protected Logger Log;
 	final protected String service;
+	final protected LatencyStats requests = new LatencyStats();
 	
 	protected AbstractServer(Logger log, String service, int port) {
 		this.service = service;
@@ -16,6 +22,13 @@ public abstract class AbstractServer {
 	}
 	
 	abstract protected void start();
+
+	/**
+	 * The load announced with the server.
+	 */
+	protected ServerLoad load() {
+		return new ServerLoad(new File(DATA_ROOT).getUsableSpace(), -1, requests.inFlight(), requests.percentile(99));
+	}
 	
 	static {
 		System.setProperty("java.net.preferIPv4Stack", "true");
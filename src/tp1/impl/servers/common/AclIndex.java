@@ -0,0 +1,123 @@
+package tp1.impl.servers.common;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ *
+ * Index of the files each user can read: the files it owns and the files shared with it.
+ *
+ * Together with the sharedWith set of each file, it maps readers to files and files to
+ * readers, so sharing, unsharing and cascading deletes only touch the entries involved.
+ * The per user sets are sorted, so that listings can be merged and resumed from a given
+ * file without copying or sorting them.
+ *
+ * User and file ids are interned, so each id is stored once, no matter how many files
+ * or readers refer to it.
+ *
+ */
+class AclIndex {
+
+	private static final Interner<String> ids = Interners.newWeakInterner();
+
+	record Entry(NavigableSet<String> owned, NavigableSet<String> shared) {
+		Entry() {
+			this(new ConcurrentSkipListSet<>(), new ConcurrentSkipListSet<>());
+		}
+	}
+
+	private final Map<String, Entry> users = new ConcurrentHashMap<>();
+
+	static String intern(String id) {
+		return id == null ? null : ids.intern(id);
+	}
+
+	void addOwned(String userId, String fileId) {
+		entry(userId).owned().add(intern(fileId));
+	}
+
+	void removeOwned(String userId, String fileId) {
+		var e = users.get(userId);
+		if (e != null)
+			e.owned().remove(fileId);
+	}
+
+	void addShared(String userId, String fileId) {
+		entry(userId).shared().add(intern(fileId));
+	}
+
+	void removeShared(String userId, String fileId) {
+		var e = users.get(userId);
+		if (e != null)
+			e.shared().remove(fileId);
+	}
+
+	/**
+	 * Removes the entry of a user.
+	 *
+	 * @return the files the user owned and had shared with it, or null if none.
+	 */
+	Entry removeUser(String userId) {
+		return users.remove(userId);
+	}
+
+	/**
+	 * Returns, in order, the ids of the files the user can read that come after the
+	 * given file id, or all of them if null.
+	 */
+	Iterator<String> readable(String userId, String after) {
+		var e = users.get(userId);
+		if (e == null)
+			return Collections.emptyIterator();
+		if (after == null)
+			return new Merge(e.owned().iterator(), e.shared().iterator());
+		else
+			return new Merge(e.owned().tailSet(after, false).iterator(), e.shared().tailSet(after, false).iterator());
+	}
+
+	private Entry entry(String userId) {
+		return users.computeIfAbsent(intern(userId), (k) -> new Entry());
+	}
+
+	/*
+	 * Merges two sorted iterators, dropping duplicates, eg. a file owned by the user and also shared with it.
+	 */
+	private static class Merge implements Iterator<String> {
+		final Iterator<String> a, b;
+		String nextA, nextB;
+
+		Merge(Iterator<String> a, Iterator<String> b) {
+			this.a = a;
+			this.b = b;
+			this.nextA = a.hasNext() ? a.next() : null;
+			this.nextB = b.hasNext() ? b.next() : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextA != null || nextB != null;
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			int cmp = nextA == null ? 1 : nextB == null ? -1 : nextA.compareTo(nextB);
+			var res = cmp <= 0 ? nextA : nextB;
+			if (cmp <= 0)
+				nextA = a.hasNext() ? a.next() : null;
+			if (cmp >= 0)
+				nextB = b.hasNext() ? b.next() : null;
+			return res;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package tp1.impl.servers.common;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ *
+ * Places files on a consistent hashing ring.
+ *
+ * Each server is mapped to several points (virtual nodes) of the ring; the replicas of
+ * a file go to the first distinct servers found walking clockwise from the hash of its id.
+ * Placement is deterministic and O(log N), and when a server joins or leaves, only the
+ * files on the arcs next to its points move.
+ *
+ * Servers can be weighted, eg. by free capacity, in which case each gets a number
+ * of virtual nodes proportional to its weight relative to the mean, up to MAX_SCALE
+ * times the default. The number is fixed when the server joins, so that rebuilding the
+ * ring when a server joins or leaves only moves the points of that server; until the
+ * first one is reported, the ring is built from the servers given.
+ *
+ */
+public class ConsistentHashPlacement implements PlacementStrategy {
+
+	static final int DEFAULT_VNODES = 128;
+	static final double MAX_SCALE = 4.0;
+
+	final int vnodes;
+	final ToDoubleFunction<URI> weight;
+	private final Set<URI> members = new HashSet<>();
+	private final Map<URI, Integer> counts = new HashMap<>();
+
+	private volatile Ring ring = new Ring(Set.of(), new TreeMap<>());
+
+	public ConsistentHashPlacement(int vnodes) {
+		this(vnodes, (u) -> 1.0);
+	}
+
+	/**
+	 * @param weight - the weight of a server, eg. its free space; NaN if unknown, which counts as the mean.
+	 */
+	public ConsistentHashPlacement(int vnodes, ToDoubleFunction<URI> weight) {
+		if (vnodes < 1)
+			throw new IllegalArgumentException("vnodes: " + vnodes);
+		this.vnodes = vnodes;
+		this.weight = weight;
+	}
+
+	@Override
+	public List<URI> place(String fileId, Collection<URI> servers, int count) {
+		var ring = this.ring;
+		if (ring.members().isEmpty())
+			ring = build(servers, vnodes(servers));
+		int wanted = Math.min(count, ring.members().size());
+
+		long h = hash(fileId);
+		var res = new LinkedHashSet<URI>();
+		walk(ring.points().tailMap(h, true), res, wanted);
+		walk(ring.points().headMap(h, false), res, wanted);
+		return new ArrayList<>(res);
+	}
+
+	@Override
+	public synchronized void changed(URI server, boolean joined) {
+		if (joined ? members.add(server) : members.remove(server)) {
+			if (joined)
+				counts.put(server, vnodes(members).get(server));
+			else
+				counts.remove(server);
+			ring = build(members, counts);
+		}
+	}
+
+	private static void walk(NavigableMap<Long, URI> arc, Set<URI> res, int wanted) {
+		for (var uri : arc.values()) {
+			if (res.size() >= wanted)
+				return;
+			res.add(uri);
+		}
+	}
+
+	/*
+	 * The number of virtual nodes of each server, from its current weight relative to the mean.
+	 */
+	private Map<URI, Integer> vnodes(Collection<URI> servers) {
+		var weights = new HashMap<URI, Double>();
+		for (var uri : servers) {
+			double w = weight.applyAsDouble(uri);
+			if (w >= 0)
+				weights.put(uri, w);
+		}
+		double mean = weights.values().stream().mapToDouble(Double::doubleValue).average().orElse(1.0);
+
+		var res = new HashMap<URI, Integer>();
+		for (var uri : servers) {
+			var w = weights.get(uri);
+			double scale = w == null || mean <= 0 ? 1.0 : Math.min(MAX_SCALE, w / mean);
+			res.put(uri, Math.max(1, (int) Math.round(vnodes * scale)));
+		}
+		return res;
+	}
+
+	private static Ring build(Collection<URI> servers, Map<URI, Integer> counts) {
+		var points = new TreeMap<Long, URI>();
+		for (var uri : servers)
+			for (int i = 0; i < counts.get(uri); i++)
+				points.putIfAbsent(hash(uri + "#" + i), uri);
+		return new Ring(Set.copyOf(servers), points);
+	}
+
+	/*
+	 * 64-bit FNV-1a, followed by a murmur3 finalizer to spread the bits of similar keys.
+	 */
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93fe1a85ec5L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	record Ring(Set<URI> members, NavigableMap<Long, URI> points) {
+	}
+}
@@ -0,0 +1,178 @@
+package tp1.impl.servers.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import tp1.api.FileInfo;
+import tp1.impl.servers.common.JavaDirectory.ExtendedFileInfo;
+
+/**
+ *
+ * The mutations of the directory metadata, as requested by its clients.
+ *
+ * Commands are applied to the current metadata, and carry everything they need, such
+ * as the replicas a file was written to, so applying them is deterministic: replicas
+ * of the directory that apply the same commands in the same order reach the same
+ * state. The effects on the Files servers are left to the directory that received
+ * the request.
+ *
+ * Applying a command returns the file it produced or, for deletes, the file it
+ * removed; null if there was none.
+ *
+ */
+sealed interface DirectoryCommand {
+
+	static final byte WRITE_FILE = 1, ADD_REPLICA = 2, DELETE_FILE = 3, SHARE_FILE = 4, UNSHARE_FILE = 5, DELETE_USER_FILES = 6,
+			SET_REPLICAS = 7;
+
+	ExtendedFileInfo applyTo(JavaDirectory dir);
+
+	void writeTo(DataOutput out) throws IOException;
+
+	/**
+	 * Sets the contents of the file to those written to the given replicas, keeping the users it is shared with.
+	 */
+	record WriteFile(String fileId, String owner, String filename, List<String> uris) implements DirectoryCommand {
+		public ExtendedFileInfo applyTo(JavaDirectory dir) {
+			return dir.updateFile(fileId, (file) -> {
+				var sharedWith = file != null ? file.info().getSharedWith() : Set.<String>of();
+				return new ExtendedFileInfo(uris, fileId, new FileInfo(owner, filename, uris.get(0), sharedWith));
+			});
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(WRITE_FILE);
+			out.writeUTF(fileId);
+			out.writeUTF(owner);
+			out.writeUTF(filename);
+			writeList(out, uris);
+		}
+	}
+
+	/**
+	 * Adds a replica that completed after the file was written, unless the file was deleted or rewritten since.
+	 */
+	record AddReplica(String fileId, String fileURL) implements DirectoryCommand {
+		public ExtendedFileInfo applyTo(JavaDirectory dir) {
+			return dir.updateFile(fileId, (file) -> file != null && file.storageId().equals(JavaDirectory.fileIdFromURL(fileURL)) ? file.withReplica(fileURL) : file);
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(ADD_REPLICA);
+			out.writeUTF(fileId);
+			out.writeUTF(fileURL);
+		}
+	}
+
+	record DeleteFile(String fileId) implements DirectoryCommand {
+		public ExtendedFileInfo applyTo(JavaDirectory dir) {
+			var removed = new AtomicReference<ExtendedFileInfo>();
+			dir.updateFile(fileId, (file) -> {
+				removed.set(file);
+				return null;
+			});
+			return removed.get();
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(DELETE_FILE);
+			out.writeUTF(fileId);
+		}
+	}
+
+	record ShareFile(String fileId, String userId) implements DirectoryCommand {
+		public ExtendedFileInfo applyTo(JavaDirectory dir) {
+			return dir.updateFile(fileId, (file) -> file != null ? file.withShare(userId) : null);
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(SHARE_FILE);
+			out.writeUTF(fileId);
+			out.writeUTF(userId);
+		}
+	}
+
+	record UnshareFile(String fileId, String userId) implements DirectoryCommand {
+		public ExtendedFileInfo applyTo(JavaDirectory dir) {
+			return dir.updateFile(fileId, (file) -> file != null ? file.withoutShare(userId) : null);
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(UNSHARE_FILE);
+			out.writeUTF(fileId);
+			out.writeUTF(userId);
+		}
+	}
+
+	record DeleteUserFiles(String userId) implements DirectoryCommand {
+		public ExtendedFileInfo applyTo(JavaDirectory dir) {
+			dir.removeUser(userId);
+			return null;
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(DELETE_USER_FILES);
+			out.writeUTF(userId);
+		}
+	}
+
+	/**
+	 * Replaces the replicas of a file, if they are still the expected ones.
+	 */
+	record SetReplicas(String fileId, List<String> expected, List<String> uris) implements DirectoryCommand {
+		public ExtendedFileInfo applyTo(JavaDirectory dir) {
+			return dir.updateFile(fileId, (file) -> {
+				if (file == null || !file.uris().equals(expected))
+					return file;
+				return new ExtendedFileInfo(uris, fileId, file.info());
+			});
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(SET_REPLICAS);
+			out.writeUTF(fileId);
+			writeList(out, expected);
+			writeList(out, uris);
+		}
+	}
+
+	static DirectoryCommand readFrom(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case WRITE_FILE:
+			return new WriteFile(AclIndex.intern(in.readUTF()), in.readUTF(), in.readUTF(), readList(in));
+		case ADD_REPLICA:
+			return new AddReplica(in.readUTF(), in.readUTF());
+		case DELETE_FILE:
+			return new DeleteFile(in.readUTF());
+		case SHARE_FILE:
+			return new ShareFile(in.readUTF(), in.readUTF());
+		case UNSHARE_FILE:
+			return new UnshareFile(in.readUTF(), in.readUTF());
+		case DELETE_USER_FILES:
+			return new DeleteUserFiles(in.readUTF());
+		case SET_REPLICAS:
+			return new SetReplicas(in.readUTF(), readList(in), readList(in));
+		default:
+			throw new IOException("Unknown directory command: " + type);
+		}
+	}
+
+	private static void writeList(DataOutput out, List<String> list) throws IOException {
+		out.writeInt(list.size());
+		for (var str : list)
+			out.writeUTF(str);
+	}
+
+	private static List<String> readList(DataInput in) throws IOException {
+		var res = new ArrayList<String>();
+		for (int i = in.readInt(); i > 0; i--)
+			res.add(in.readUTF());
+		return res;
+	}
+}
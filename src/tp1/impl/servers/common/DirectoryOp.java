@@ -0,0 +1,132 @@
+package tp1.impl.servers.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import tp1.api.FileInfo;
+import tp1.impl.servers.common.JavaDirectory.ExtendedFileInfo;
+
+/**
+ *
+ * The mutations of the directory metadata, as logged to its write-ahead log.
+ *
+ * Applying an operation is idempotent, so the log can be replayed over a snapshot
+ * that already reflects some of its operations.
+ *
+ */
+sealed interface DirectoryOp {
+
+	// Shares and unshares are logged as whole file updates, with PUT_FILE; 3 and 4 are no longer used.
+	static final byte PUT_FILE = 1, REMOVE_FILE = 2, REMOVE_USER = 5;
+
+	void applyTo(Map<String, ExtendedFileInfo> files);
+
+	void writeTo(DataOutput out) throws IOException;
+
+	record PutFile(ExtendedFileInfo file) implements DirectoryOp {
+		public void applyTo(Map<String, ExtendedFileInfo> files) {
+			files.put(file.fileId(), file);
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(PUT_FILE);
+			writeFile(out, file);
+		}
+	}
+
+	record RemoveFile(String fileId) implements DirectoryOp {
+		public void applyTo(Map<String, ExtendedFileInfo> files) {
+			files.remove(fileId);
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(REMOVE_FILE);
+			out.writeUTF(fileId);
+		}
+	}
+
+	/**
+	 * Removes the files of a user, and the user from the files shared with it.
+	 */
+	record RemoveUser(String userId) implements DirectoryOp {
+		public void applyTo(Map<String, ExtendedFileInfo> files) {
+			files.values().removeIf(f -> userId.equals(f.info().getOwner()));
+			files.replaceAll((k, f) -> f.withoutShare(userId));
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(REMOVE_USER);
+			out.writeUTF(userId);
+		}
+	}
+
+	default byte[] toBytes() {
+		try {
+			var bytes = new ByteArrayOutputStream();
+			writeTo(new DataOutputStream(bytes));
+			return bytes.toByteArray();
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+	}
+
+	static DirectoryOp fromBytes(byte[] data) {
+		try {
+			return readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+	}
+
+	static DirectoryOp readFrom(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case PUT_FILE:
+			return new PutFile(readFile(in));
+		case REMOVE_FILE:
+			return new RemoveFile(in.readUTF());
+		case REMOVE_USER:
+			return new RemoveUser(in.readUTF());
+		default:
+			throw new IOException("Unknown directory operation: " + type);
+		}
+	}
+
+	static void writeFile(DataOutput out, ExtendedFileInfo file) throws IOException {
+		var info = file.info();
+		out.writeUTF(file.fileId());
+		out.writeUTF(info.getOwner());
+		out.writeUTF(info.getFilename());
+		out.writeUTF(info.getFileURL());
+		out.writeInt(file.uris().size());
+		for (var uri : file.uris())
+			out.writeUTF(uri);
+		out.writeInt(info.getSharedWith().size());
+		for (var userId : info.getSharedWith())
+			out.writeUTF(userId);
+	}
+
+	static ExtendedFileInfo readFile(DataInput in) throws IOException {
+		var fileId = AclIndex.intern(in.readUTF());
+		var owner = in.readUTF();
+		var filename = in.readUTF();
+		var fileURL = in.readUTF();
+		var uris = new ArrayList<String>();
+		for (int i = in.readInt(); i > 0; i--)
+			uris.add(in.readUTF());
+		var sharedWith = new HashSet<String>();
+		for (int i = in.readInt(); i > 0; i--)
+			sharedWith.add(AclIndex.intern(in.readUTF()));
+		return new ExtendedFileInfo(uris, fileId, new FileInfo(owner, filename, fileURL, Set.copyOf(sharedWith)));
+	}
+}
@@ -0,0 +1,61 @@
+package tp1.impl.servers.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import tp1.impl.servers.common.JavaDirectory.ExtendedFileInfo;
+import util.LogStore;
+
+/**
+ *
+ * Durable storage of the directory metadata: snapshots of all the files, plus a
+ * write-ahead log of the directory operations applied since.
+ *
+ * Persistence is off unless a data directory is set with -Ddir.dataDir. The directory
+ * must be dedicated to the store; in particular, not a folder of the root of a Files
+ * server on the same host, where it could collide with the folder of a user.
+ *
+ */
+class DirectoryStore extends LogStore<ExtendedFileInfo> {
+
+	static final String DATA_DIR = "dir.dataDir";
+	static final String DEFAULT_DATA_DIR = "";
+	static final String SNAPSHOT_EVERY = "dir.snapshotEvery";
+	static final long DEFAULT_SNAPSHOT_EVERY = 100_000;
+
+	private static final int SNAPSHOT_MAGIC = 0x44495231;
+
+	DirectoryStore(Path dir, long snapshotEvery) {
+		super(dir, snapshotEvery, SNAPSHOT_MAGIC);
+	}
+
+	/**
+	 * Returns the store configured for this deployment, or null if persistence is disabled.
+	 */
+	static DirectoryStore fromProperties() {
+		var dataDir = System.getProperty(DATA_DIR, DEFAULT_DATA_DIR).trim();
+		return dataDir.isEmpty() ? null : new DirectoryStore(Path.of(dataDir), Long.getLong(SNAPSHOT_EVERY, DEFAULT_SNAPSHOT_EVERY));
+	}
+
+	void recover(Map<String, ExtendedFileInfo> files) throws IOException {
+		super.recover((file) -> files.put(file.fileId(), file), (data) -> DirectoryOp.fromBytes(data).applyTo(files));
+	}
+
+	CompletableFuture<Void> log(DirectoryOp op) {
+		return super.log(op.toBytes());
+	}
+
+	@Override
+	protected void writeEntry(DataOutput out, ExtendedFileInfo file) throws IOException {
+		DirectoryOp.writeFile(out, file);
+	}
+
+	@Override
+	protected ExtendedFileInfo readEntry(DataInput in) throws IOException {
+		return DirectoryOp.readFile(in);
+	}
+}
@@ -6,57 +6,110 @@ import static tp1.api.service.java.Result.ok;
 import static tp1.api.service.java.Result.redirect;
 import static tp1.api.service.java.Result.ErrorCode.BAD_REQUEST;
 import static tp1.api.service.java.Result.ErrorCode.FORBIDDEN;
+import static tp1.api.service.java.Result.ErrorCode.INTERNAL_ERROR;
 import static tp1.api.service.java.Result.ErrorCode.NOT_FOUND;
 import static tp1.impl.clients.Clients.FilesClients;
-import static tp1.impl.clients.Clients.UsersClients;
 import static util.Hash.of;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import java.util.stream.StreamSupport;
 
 import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
 import tp1.api.User;
 import tp1.api.service.java.Directory;
+import tp1.api.service.java.Files;
 import tp1.api.service.java.Result;
-import tp1.api.service.java.Result.ErrorCode;
+import tp1.impl.clients.common.ReplicaSelector;
+import tp1.impl.discovery.Discovery;
+import tp1.impl.servers.common.DirectoryCommand.AddReplica;
+import tp1.impl.servers.common.DirectoryCommand.DeleteFile;
+import tp1.impl.servers.common.DirectoryCommand.DeleteUserFiles;
+import tp1.impl.servers.common.DirectoryCommand.ShareFile;
+import tp1.impl.servers.common.DirectoryCommand.UnshareFile;
+import tp1.impl.servers.common.DirectoryCommand.WriteFile;
+import tp1.impl.servers.common.DirectoryOp.PutFile;
+import tp1.impl.servers.common.DirectoryOp.RemoveFile;
+import tp1.impl.servers.common.DirectoryOp.RemoveUser;
+import tp1.impl.servers.kafka.UserEvents;
+import util.Cursor;
 import util.Token;
 
 public class JavaDirectory implements Directory {
 
-	static final long USER_CACHE_EXPIRATION = 3000;
-
-	final LoadingCache<UserInfo, Result<User>> users = CacheBuilder.newBuilder()
-			.expireAfterWrite( Duration.ofMillis(USER_CACHE_EXPIRATION))
-			.build(new CacheLoader<>() {
-				@Override
-				public Result<User> load(UserInfo info) throws Exception {
-					var res = UsersClients.get().getUser( info.userId(), info.password());
-					if( res.error() == ErrorCode.TIMEOUT)
-						return error(BAD_REQUEST);
-					else
-						return res;
-				}
-			});
-	
+	static final int MAX_CONCURRENT_WRITES = 32;
+	static final long MIN_FREE_BYTES = 64 * 1024 * 1024;
+
+	final UserEvents userEvents = UserEvents.fromProperties();
+	final UserCache users = new UserCache(userEvents.isDistributed());
+
 	final static Logger Log = Logger.getLogger(JavaDirectory.class.getName());
 	final ExecutorService executor = Executors.newCachedThreadPool();
+	final ExecutorService writers = Executors.newFixedThreadPool(MAX_CONCURRENT_WRITES);
+	final ReplicationStats replicationStats = new ReplicationStats();
 
 	final Map<String, ExtendedFileInfo> files = new ConcurrentHashMap<>();
-	final Map<String, UserFiles> userFiles = new ConcurrentHashMap<>();
+	final AclIndex acl = new AclIndex();
 	final Map<URI, FileCounts> fileCounts = new ConcurrentHashMap<>();
+	final Map<String, CompletableFuture<Void>> pendingWrites = new ConcurrentHashMap<>();
+	final ReplicaSelector readSelector = new ReplicaSelector((u) -> {
+		var load = Discovery.getInstance().loadOf(Files.SERVICE_NAME, u);
+		return load == null ? Double.NaN : load.cost();
+	});
+	final ReplicationPolicy.Policies policies = ReplicationPolicy.fromProperties();
+	final ReplicaRepairer repairer = new ReplicaRepairer(this);
+	final PlacementStrategy placement = PlacementStrategy.fromProperties(this::loadOf, this::weightOf);
+	final Set<URI> fileServers = ConcurrentHashMap.newKeySet();
+	private volatile boolean trackingServers;
+
+	final DirectoryStore store;
+
+	public JavaDirectory() {
+		this(DirectoryStore.fromProperties(), true);
+	}
+
+	/**
+	 * @param store  - the store of the metadata, or null if it is not to be persisted.
+	 * @param repair - true if this directory repairs the replicas of the files.
+	 */
+	protected JavaDirectory(DirectoryStore store, boolean repair) {
+		this.store = store;
+		if (store != null)
+			recover();
+		userEvents.subscribe(users::invalidateUser);
+		if (repair)
+			repairer.start();
+	}
+
+	/*
+	 * Reloads the files from the store, and rebuilds the per user and per server indexes from them.
+	 */
+	private void recover() {
+		try {
+			store.recover(files);
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+		for (var file : files.values())
+			reindex(file.fileId(), null, file);
+	}
 	
 	@Override
 	public Result<FileInfo> writeFile(String filename, byte[] data, String userId, String password) {
@@ -68,37 +121,132 @@ public class JavaDirectory implements Directory {
 		if (!user.isOK())
 			return error(user.error());
 
-		var uf = userFiles.computeIfAbsent(userId, (k) -> new UserFiles());
-		synchronized (uf) {
-			var fileId = fileId(filename, userId);
+		var policy = policies.forUser(userId);
+		var fileId = fileId(filename, userId);
+
+		var turn = new CompletableFuture<Void>();
+		awaitTurn(fileId, turn);
+
+		ReplicatedWrite write;
+		List<String> previous;
+		String storageId;
+		try {
 			var file = files.get(fileId);
-			var info = file != null ? file.info() : new FileInfo();
-			int count = 0;
-			Queue<String> uris = new ArrayDeque<>();
-			for (var uri :  orderCandidateFileServers(file)) {
-				if(count == 2) break;
-				String fileURL = String.format("%s/files/%s", uri, fileId);
-				long time = System.currentTimeMillis();
-				var result = FilesClients.get(uri).writeFile(fileId, data, Token.createToken(fileId, time));
-				if (result.isOK()) {
-					uris.add(fileURL);
-					count++;
-					info.setOwner(userId);
-					info.setFilename(filename);
-					info.setFileURL(fileURL);
-					files.put(fileId, file = new ExtendedFileInfo(uris, fileId, info));
-					uf.owned().add(fileId);
-					getFileCounts(uri, true).numFiles().incrementAndGet();
-				} else {
-					Log.info(String.format("Files.writeFile(...) to %s failed with: %s %s %d %s \n", uri, result, fileId, time, Token.get()));
-				}
+			var candidates = orderCandidateFileServers(fileId, file, policy.replicas());
+			if (candidates.size() < policy.writeQuorum()) {
+				Log.info(String.format("Cannot write %s: %d Files servers available, write quorum is %d\n", fileId, candidates.size(), policy.writeQuorum()));
+				endTurn(fileId, turn);
+				return error(BAD_REQUEST);
 			}
-			if(count > 0)
-				return ok(file.info());
-			else return error(BAD_REQUEST);
+			previous = file != null ? file.uris() : List.of();
+			storageId = storageId(fileId, file);
+
+			write = new ReplicatedWrite(writers, fileId, candidates, policy.replicas(),
+					(uri) -> FilesClients.get(uri).writeFile(storageId, data, Token.createToken(storageId, System.currentTimeMillis())));
+		} catch (RuntimeException x) {
+			endTurn(fileId, turn);
+			throw x;
 		}
+
+		var acked = write.awaitAcks(policy.writeQuorum());
+		if (acked.size() < policy.writeQuorum()) {
+			replicationStats.record(acked.size(), false);
+			// Nothing refers to the copies written, which are apart from those of the previous version...
+			write.finishInBackground(executor, (uri) -> {
+			}).thenAccept((all) -> deleteCopies(urls(all, storageId))).whenComplete((v, x) -> endTurn(fileId, turn));
+			return error(BAD_REQUEST);
+		}
+
+		var uris = urls(acked, storageId);
+		ExtendedFileInfo updated;
+		try {
+			updated = submit(new WriteFile(fileId, userId, filename, uris));
+		} catch (SubmitException x) {
+			Log.warning(x.getMessage() + "\n");
+			// If the write may still be applied, its copies are kept, and the late ones added...
+			if (x.pending)
+				write.finishInBackground(executor, (uri) -> addLateReplica(fileId, storageId, uri)).whenComplete((v, t) -> endTurn(fileId, turn));
+			else
+				write.finishInBackground(executor, (uri) -> {
+				}).thenAccept((all) -> deleteCopies(urls(all, storageId))).whenComplete((v, t) -> endTurn(fileId, turn));
+			return error(INTERNAL_ERROR);
+		} catch (RuntimeException x) {
+			write.finishInBackground(executor, (uri) -> {
+			}).whenComplete((v, t) -> endTurn(fileId, turn));
+			throw x;
+		}
+
+		// The replicas beyond the write quorum are added to the file as they complete, and
+		// the replicas of the previous version are then deleted...
+		write.finishInBackground(executor, (uri) -> addLateReplica(fileId, storageId, uri)).thenAccept((all) -> {
+			replicationStats.record(all.size(), true);
+			Log.fine(replicationStats + "\n");
+			deleteCopies(previous);
+		}).whenComplete((v, x) -> endTurn(fileId, turn));
+		return ok(updated.info());
+	}
+
+	/*
+	 * Waits for the previous write or delete of the file to finish, including its
+	 * replicas completing in the background, so that they cannot overwrite the new
+	 * contents. No lock is held while waiting, or while talking to the Files servers.
+	 */
+	void awaitTurn(String fileId, CompletableFuture<Void> turn) {
+		var previous = pendingWrites.put(fileId, turn);
+		if (previous != null)
+			previous.join();
 	}
 
+	/*
+	 * Takes the turn of the file only if no write or delete of it is in progress.
+	 */
+	boolean tryTurn(String fileId, CompletableFuture<Void> turn) {
+		return pendingWrites.putIfAbsent(fileId, turn) == null;
+	}
+
+	void endTurn(String fileId, CompletableFuture<Void> turn) {
+		pendingWrites.remove(fileId, turn);
+		turn.complete(null);
+	}
+
+	/*
+	 * The name a new version of the file is stored under: the id of the file, for its first
+	 * version, or a fresh name for the next ones, so that a write is not stored over the
+	 * previous version until the file refers to it.
+	 */
+	static String storageId(String fileId, ExtendedFileInfo previous) {
+		return previous == null ? fileId : String.format("%s~%x", fileId, ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+	}
+
+	private static List<String> urls(Collection<URI> servers, String storageId) {
+		return servers.stream().map((uri) -> fileURL(uri, storageId)).toList();
+	}
+
+	/*
+	 * Deletes the copies of a file at the given urls.
+	 */
+	private void deleteCopies(Collection<String> urls) {
+		for (var url : urls) {
+			var storageId = fileIdFromURL(url);
+			FilesClients.get(serverFromURL(url)).deleteFile(storageId, Token.createToken(storageId, System.currentTimeMillis()));
+		}
+	}
+
+	/*
+	 * Records a replica that acknowledged after the write returned. If the file was
+	 * deleted or rewritten in the meantime, the replica is removed.
+	 */
+	private void addLateReplica(String fileId, String storageId, URI uri) {
+		var url = fileURL(uri, storageId);
+		try {
+			var updated = submit(new AddReplica(fileId, url));
+			if (updated == null || !updated.uris().contains(url))
+				deleteCopies(List.of(url));
+		} catch (SubmitException x) {
+			// the replica is added by the repairer, if it is still missing...
+			Log.warning(x.getMessage() + "\n");
+		}
+	}
 	
 	@Override
 	public Result<Void> deleteFile(String filename, String userId, String password) {
@@ -107,30 +255,39 @@ public class JavaDirectory implements Directory {
 
 		var fileId = fileId(filename, userId);
 
-		var file = files.get(fileId);
-		if (file == null)
+		if (!files.containsKey(fileId))
 			return error(NOT_FOUND);
 
 		var user = getUser(userId, password);
 		if (!user.isOK())
 			return error(user.error());
 
-		var uf = userFiles.getOrDefault(userId, new UserFiles());
-		synchronized (uf) {
-			var info = files.remove(fileId);
-			uf.owned().remove(fileId);
+		var turn = new CompletableFuture<Void>();
+		awaitTurn(fileId, turn);
 
-			executor.execute(() -> {
-				this.removeSharesOfFile(info);
-				for (var uri : file.uris()) {
-					FilesClients.get(uri).deleteFile(fileId, Token.createToken(fileId, System.currentTimeMillis()));
-				}
-			});
+		ExtendedFileInfo file;
+		try {
+			file = submit(new DeleteFile(fileId));
+		} catch (SubmitException x) {
+			Log.warning(x.getMessage() + "\n");
+			endTurn(fileId, turn);
+			return error(INTERNAL_ERROR);
+		} catch (RuntimeException x) {
+			endTurn(fileId, turn);
+			throw x;
+		}
+		if (file == null) {
+			endTurn(fileId, turn);
+			return error(NOT_FOUND);
+		}
 
-			for (var uri : info.uris()) {
-				getFileCounts(URIfromURL(uri), false).numFiles().decrementAndGet();
+		executor.execute(() -> {
+			try {
+				deleteCopies(file.uris());
+			} finally {
+				endTurn(fileId, turn);
 			}
-		}
+		});
 		return ok();
 	}
 
@@ -149,11 +306,8 @@ public class JavaDirectory implements Directory {
 		if (!user.isOK())
 			return error(user.error());
 
-		var uf = userFiles.computeIfAbsent(userIdShare, (k) -> new UserFiles());
-		synchronized (uf) {
-			uf.shared().add(fileId);
-			file.info().getSharedWith().add(userIdShare);
-		}
+		if (submit(new ShareFile(fileId, userIdShare)) == null)
+			return error(NOT_FOUND);
 
 		return ok();
 	}
@@ -173,11 +327,8 @@ public class JavaDirectory implements Directory {
 		if (!user.isOK())
 			return error(user.error());
 
-		var uf = userFiles.computeIfAbsent(userIdShare, (k) -> new UserFiles());
-		synchronized (uf) {
-			uf.shared().remove(fileId);
-			file.info().getSharedWith().remove(userIdShare);
-		}
+		if (submit(new UnshareFile(fileId, userIdShare)) == null)
+			return error(NOT_FOUND);
 
 		return ok();
 	}
@@ -199,7 +350,25 @@ public class JavaDirectory implements Directory {
 		if (!file.info().hasAccess(accUserId))
 			return error(FORBIDDEN);
 
-		return redirect( file.uris );
+		return redirect( readReplicas(file, policies.forUser(userId).readReplicas()) );
+	}
+
+	/*
+	 * Picks the replicas offered to a reader, best first: the redirect goes to the first one.
+	 * Servers are ranked by the latency and failures of the calls this directory made to
+	 * them, or by the load they announce until it has made any; servers that keep failing
+	 * are skipped for a while.
+	 */
+	private Queue<String> readReplicas(ExtendedFileInfo file, int count) {
+		var byServer = new LinkedHashMap<URI, String>();
+		for (var uri : file.uris())
+			byServer.put(URIfromURL(uri), uri);
+
+		Queue<String> result = new ArrayDeque<>();
+		for (var server : readSelector.order(byServer.keySet()))
+			if (result.size() < count)
+				result.add(byServer.get(server));
+		return result;
 	}
 
 	@Override
@@ -211,17 +380,70 @@ public class JavaDirectory implements Directory {
 		if (!user.isOK())
 			return error(user.error());
 
-		var uf = userFiles.getOrDefault(userId, new UserFiles());
-		synchronized (uf) {
-			var infos = Stream.concat(uf.owned().stream(), uf.shared().stream()).map(f -> files.get(f).info())
-					.collect(Collectors.toSet());
+		var infos = new ArrayList<FileInfo>();
+		for (var it = acl.readable(userId, null); it.hasNext();) {
+			var file = files.get(it.next());
+			if (file != null)
+				infos.add(file.info());
+		}
+		return ok(infos);
+	}
 
-			return ok(new ArrayList<>(infos));
+	/*
+	 * Authenticates the user once, then iterates lazily over the files it can read, in the
+	 * index, so that a long listing is not authenticated again for every page, and cannot
+	 * fail once it started; files removed meanwhile are skipped.
+	 */
+	@Override
+	public Result<Iterator<FileInfo>> lsFileIterator(String userId, String password, int pageSize, String cursor) {
+		if (badParam(userId))
+			return error(BAD_REQUEST);
+
+		String after;
+		try {
+			after = Cursor.keyOf(cursor);
+		} catch (IllegalArgumentException x) {
+			return error(BAD_REQUEST);
 		}
+
+		var user = getUser(userId, password);
+		if (!user.isOK())
+			return error(user.error());
+
+		var ids = Spliterators.spliteratorUnknownSize(acl.readable(userId, after), Spliterator.ORDERED);
+		return ok(StreamSupport.stream(ids, false).map(files::get).filter(Objects::nonNull).map(ExtendedFileInfo::info).iterator());
+	}
+
+	@Override
+	public Result<FileInfoPage> lsFilePage(String userId, String password, int limit, String cursor) {
+		if (badParam(userId) || limit < 0)
+			return error(BAD_REQUEST);
+
+		String after;
+		try {
+			after = Cursor.keyOf(cursor);
+		} catch (IllegalArgumentException x) {
+			return error(BAD_REQUEST);
+		}
+
+		var user = getUser(userId, password);
+		if (!user.isOK())
+			return error(user.error());
+
+		var infos = new ArrayList<FileInfo>();
+		String last = null;
+		var it = acl.readable(userId, after);
+		while (it.hasNext() && (limit == 0 || infos.size() < limit)) {
+			last = it.next();
+			var file = files.get(last);
+			if (file != null)
+				infos.add(file.info());
+		}
+		return ok(new FileInfoPage(infos, it.hasNext() ? Cursor.after(last) : null));
 	}
 
 	public static String fileId(String filename, String userId) {
-		return userId + JavaFiles.DELIMITER + filename;
+		return AclIndex.intern(userId + JavaFiles.DELIMITER + filename);
 	}
 
 	private static boolean badParam(String str) {
@@ -229,65 +451,217 @@ public class JavaDirectory implements Directory {
 	}
 
 	private Result<User> getUser(String userId, String password) {
-		try {
-			return users.get( new UserInfo( userId, password));
-		} catch( Exception x ) {
-			x.printStackTrace();
-			return error( ErrorCode.INTERNAL_ERROR);
-		}
+		return users.get(userId, password);
 	}
 	
 	@Override
 	public Result<Void> deleteUserFiles(String userId, String password, String token) {
 		if(!Token.validateToken(userId, token)) return error( FORBIDDEN );
-		users.invalidate( new UserInfo(userId, password));
+		users.invalidate(userId, password);
 		
-		var fileIds = userFiles.remove(userId);
-		if (fileIds != null)
-			for (var id : fileIds.owned()) {
-				var file = files.remove(id);
-				removeSharesOfFile(file);
-				for (var uri : file.uris()) {
-					getFileCounts(URIfromURL(uri), false).numFiles().decrementAndGet();
-				}
-			}
+		submit(new DeleteUserFiles(userId));
 		return ok();
 	}
 
-	private void removeSharesOfFile(ExtendedFileInfo file) {
-		for (var userId : file.info().getSharedWith())
-			userFiles.getOrDefault(userId, new UserFiles()).shared().remove(file.fileId());
+	/*
+	 * Submits a mutation of the metadata, returning the file it produced or, for deletes, removed.
+	 * Throws SubmitException if the mutation could not be applied.
+	 */
+	protected ExtendedFileInfo submit(DirectoryCommand cmd) {
+		return apply(cmd);
+	}
+
+	/**
+	 * A mutation of the metadata that could not be applied, eg. not replicated in time; if it is
+	 * pending, it may still be applied later.
+	 */
+	static class SubmitException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		final boolean pending;
+
+		SubmitException(DirectoryCommand cmd, boolean pending) {
+			super((pending ? "Not applied in time: " : "Failed to submit: ") + cmd);
+			this.pending = pending;
+		}
+	}
+
+	protected ExtendedFileInfo apply(DirectoryCommand cmd) {
+		return cmd.applyTo(this);
+	}
+
+	/*
+	 * Removes the files of a user, and the user from the files shared with it.
+	 */
+	void removeUser(String userId) {
+		var fileIds = acl.removeUser(userId);
+		if (fileIds != null) {
+			for (var id : fileIds.owned())
+				files.computeIfPresent(id, (k, file) -> {
+					reindex(k, file, null);
+					return null;
+				});
+			for (var id : fileIds.shared())
+				files.computeIfPresent(id, (k, file) -> {
+					var updated = file.withoutShare(userId);
+					reindex(k, file, updated);
+					return updated;
+				});
+		}
+		persist(new RemoveUser(userId));
+	}
+
+	/*
+	 * Replaces the metadata of a file with a new immutable version, or removes it if the
+	 * update returns null. The update runs atomically, and must not block; the versions
+	 * are indexed and logged in the same order they are applied.
+	 */
+	ExtendedFileInfo updateFile(String fileId, UnaryOperator<ExtendedFileInfo> update) {
+		var logged = new AtomicReference<CompletableFuture<Void>>();
+		Supplier<ExtendedFileInfo> compute = () -> files.compute(fileId, (k, file) -> {
+			var updated = update.apply(file);
+			if (updated != file) {
+				reindex(fileId, file, updated);
+				if (store != null)
+					logged.set(store.log(updated != null ? new PutFile(updated) : new RemoveFile(fileId)));
+			}
+			return updated;
+		});
+		var res = store != null ? store.logging(compute) : compute.get();
+		if (logged.get() != null) {
+			logged.get().join();
+			store.maybeSnapshot(files.values());
+		}
+		return res;
+	}
+
+	/*
+	 * Updates the per user and per server indexes after a file changed, from before to
+	 * after; either is null if the file did not, or no longer, exists.
+	 */
+	private void reindex(String fileId, ExtendedFileInfo before, ExtendedFileInfo after) {
+		if (before == null)
+			acl.addOwned(after.info().getOwner(), fileId);
+		else if (after == null)
+			acl.removeOwned(before.info().getOwner(), fileId);
+
+		var readers = before != null ? before.info().getSharedWith() : Set.<String>of();
+		var nowReaders = after != null ? after.info().getSharedWith() : Set.<String>of();
+		for (var userId : nowReaders)
+			if (!readers.contains(userId))
+				acl.addShared(userId, fileId);
+		for (var userId : readers)
+			if (!nowReaders.contains(userId))
+				acl.removeShared(userId, fileId);
+
+		var uris = before != null ? before.uris() : List.<String>of();
+		var nowUris = after != null ? after.uris() : List.<String>of();
+		for (var uri : nowUris)
+			if (!uris.contains(uri))
+				getFileCounts(URIfromURL(uri), true).numFiles().incrementAndGet();
+		for (var uri : uris)
+			if (!nowUris.contains(uri))
+				getFileCounts(URIfromURL(uri), false).numFiles().decrementAndGet();
 	}
 
+	/*
+	 * Makes a mutation durable, before it is acknowledged to the client.
+	 */
+	private void persist(DirectoryOp op) {
+		if (store != null) {
+			store.log(op).join();
+			store.maybeSnapshot(files.values());
+		}
+	}
 
-	private Queue<URI> orderCandidateFileServers(ExtendedFileInfo file) {
-		int MAX_SIZE=3;
+
+	/*
+	 * Returns the current replicas of the file, followed by the servers chosen by the placement
+	 * strategy, keeping one spare for each replica that fails.
+	 */
+	Queue<URI> orderCandidateFileServers(String fileId, ExtendedFileInfo file, int replicas) {
+		return orderCandidateFileServers(fileId, file, replicas, Level.INFO);
+	}
+
+	Queue<URI> orderCandidateFileServers(String fileId, ExtendedFileInfo file, int replicas, Level level) {
+		int MAX_SIZE = replicas + 1;
 		Queue<URI> result = new ArrayDeque<>();
 		
 		if( file != null )
 			result.addAll(file.uris().stream().map(this::URIfromURL).toList());
 
-		FilesClients.all()
+		placement.place(fileId, fileServers(), MAX_SIZE + result.size())
 				.stream()
 				.filter( u -> ! result.contains(u))
-				.map(u -> getFileCounts(u, false))
-				.sorted( FileCounts::ascending )
-				.map(FileCounts::uri)
 				.limit(MAX_SIZE)
 				.forEach( result::add );
 
-		Log.info("Candidate files servers: " + result + "\n");
+		Log.log(level, "Candidate files servers: " + result + "\n");
 		return result;
 	}
 	
-	private FileCounts getFileCounts( URI uri, boolean create ) {
+	/*
+	 * The Files servers, as kept up to date by discovery, which also tells the placement strategy
+	 * about servers joining and leaving; blocks until one is known, like FilesClients.all().
+	 */
+	Collection<URI> fileServers() {
+		if (!trackingServers)
+			synchronized (fileServers) {
+				if (!trackingServers) {
+					FilesClients.subscribe((uri, joined) -> {
+						if (joined)
+							fileServers.add(uri);
+						else
+							fileServers.remove(uri);
+						placement.changed(uri, joined);
+					});
+					trackingServers = true;
+				}
+			}
+		return fileServers.isEmpty() ? FilesClients.all() : fileServers;
+	}
+
+	/*
+	 * The weight of a server for the hash placement: the free space announced by it, rounded down
+	 * to a power of two, so that it does not change with every file written or deleted.
+	 */
+	double weightOf(URI uri) {
+		var load = Discovery.getInstance().loadOf(Files.SERVICE_NAME, uri);
+		if (load == null)
+			return Double.NaN;
+		return Long.highestOneBit(Math.max(0, load.freeBytes()));
+	}
+
+	/*
+	 * The files on a server, as announced by it, or as counted by this directory, if higher, since
+	 * the count includes writes not yet announced; servers short of disk space come last.
+	 */
+	long loadOf(URI uri) {
+		var local = getFileCounts(uri, false).numFiles().get();
+		var load = Discovery.getInstance().loadOf(Files.SERVICE_NAME, uri);
+		if (load == null)
+			return local;
+		if (load.freeBytes() < MIN_FREE_BYTES)
+			return Long.MAX_VALUE;
+		return Math.max(local, load.files());
+	}
+
+	FileCounts getFileCounts( URI uri, boolean create ) {
 		if( create )
 			return fileCounts.computeIfAbsent(uri,  FileCounts::new);
 		else
 			return fileCounts.getOrDefault( uri, new FileCounts(uri) );
 	}
 
-	private URI URIfromURL(String fileURL) {
+	static String fileURL(URI uri, String fileId) {
+		return String.format("%s/files/%s", uri, fileId);
+	}
+
+	URI URIfromURL(String fileURL) {
+		return serverFromURL(fileURL);
+	}
+
+	public static URI serverFromURL(String fileURL) {
 		String[] tokens = fileURL.split("/files/");
 		return URI.create(tokens[0]);
 	}
@@ -297,13 +671,55 @@ public class JavaDirectory implements Directory {
 		return tokens[1];
 	}
 	
-	static record ExtendedFileInfo(Queue<String> uris, String fileId, FileInfo info) {
-	}
+	/*
+	 * The metadata of a file. Instances are immutable, including the FileInfo, and
+	 * are replaced as a whole when the file changes.
+	 */
+	static record ExtendedFileInfo(List<String> uris, String fileId, FileInfo info) {
+
+		ExtendedFileInfo {
+			uris = List.copyOf(uris);
+		}
 
-	static record UserFiles(Set<String> owned, Set<String> shared) {
+		/*
+		 * The name the contents are stored under, the same at all the replicas.
+		 */
+		String storageId() {
+			return uris.isEmpty() ? fileId : fileIdFromURL(uris.get(0));
+		}
 
-		UserFiles() {
-			this(ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet());
+		ExtendedFileInfo withReplica(String fileURL) {
+			if (uris.contains(fileURL))
+				return this;
+			var res = new ArrayList<>(uris);
+			res.add(fileURL);
+			return new ExtendedFileInfo(res, fileId, info);
+		}
+
+		ExtendedFileInfo withoutReplicas(Collection<String> fileURLs) {
+			var res = new ArrayList<>(uris);
+			res.removeAll(fileURLs);
+			return new ExtendedFileInfo(res, fileId, info);
+		}
+
+		ExtendedFileInfo withShare(String userId) {
+			if (info.getSharedWith().contains(userId))
+				return this;
+			var res = new HashSet<>(info.getSharedWith());
+			res.add(AclIndex.intern(userId));
+			return withSharedWith(res);
+		}
+
+		ExtendedFileInfo withoutShare(String userId) {
+			if (!info.getSharedWith().contains(userId))
+				return this;
+			var res = new HashSet<>(info.getSharedWith());
+			res.remove(userId);
+			return withSharedWith(res);
+		}
+
+		private ExtendedFileInfo withSharedWith(Set<String> sharedWith) {
+			return new ExtendedFileInfo(uris, fileId, new FileInfo(info.getOwner(), info.getFilename(), info.getFileURL(), Set.copyOf(sharedWith)));
 		}
 	}
 
@@ -311,12 +727,6 @@ public class JavaDirectory implements Directory {
 		FileCounts( URI uri) {
 			this(uri, new AtomicLong(0L) );
 		}
-
-		static int ascending(FileCounts a, FileCounts b) {
-			return Long.compare( a.numFiles().get(), b.numFiles().get());
-		}
 	}	
-	
-	static record UserInfo(String userId, String password) {		
-	}
+
 }
\ No newline at end of file
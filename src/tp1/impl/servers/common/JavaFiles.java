@@ -8,8 +8,13 @@ import static util.Hash.of;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import tp1.api.service.java.Files;
@@ -20,8 +25,25 @@ import util.Token;
 public class JavaFiles implements Files {
 
 	static final String DELIMITER = "$$$";
-	static final String ROOT = "/tmp/";
-	
+	static final String ROOT_DIR = "files.root";
+
+	// The files of this server, and nothing else, so that they can be counted; set with -Dfiles.root.
+	static final String ROOT = rootDir(System.getProperty(ROOT_DIR, "/tmp/files/"));
+
+	static final String UPLOAD = ".upload";
+	static final int LOCK_STRIPES = 64;
+
+	// The temporary files of the uploads in progress, or left behind by a crash.
+	static final Pattern TEMPORARY = Pattern.compile(".*\\.(tmp|upload)\\d+$");
+
+	private static final Object[] locks = new Object[LOCK_STRIPES];
+	private static final AtomicLong storedFiles = new AtomicLong(countStored());
+
+	static {
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = new Object();
+	}
+
 	public JavaFiles() {
 		new File( ROOT ).mkdirs();
 	}
@@ -34,11 +56,19 @@ public class JavaFiles implements Files {
 		return data != null ? ok( data) : error( NOT_FOUND );
 	}
 
+	/**
+	 * The number of files stored by this server, including those found under ROOT when it started.
+	 */
+	public static long storedFiles() {
+		return storedFiles.get();
+	}
+
 	@Override
 	public Result<Void> deleteFile(String fileId, String token) {
 		if(!Token.validateToken(fileId, token)) return error( FORBIDDEN );
 		fileId = fileId.replace( DELIMITER, "/");
-		boolean res = IO.delete( new File( ROOT + fileId ));	
+		File file = new File( ROOT + fileId );
+		boolean res = counted( file, () -> IO.delete( file ));
 		return res ? ok() : error( NOT_FOUND );
 	}
 
@@ -48,19 +78,63 @@ public class JavaFiles implements Files {
 		fileId = fileId.replace( DELIMITER, "/");
 		File file = new File(ROOT + fileId);
 		file.getParentFile().mkdirs();
-		IO.write( file, data);
+		counted( file, () -> {
+			IO.write( file, data);
+			return null;
+		});
 		return ok();
 	}
 
+	@Override
+	public Result<InputStream> getFileStream(String fileId, String token) {
+		if(!Token.validateToken(fileId, token)) return error( FORBIDDEN );
+		fileId = fileId.replace( DELIMITER, "/");
+		var in = IO.open( new File( ROOT + fileId ));
+		return in != null ? ok( in ) : error( NOT_FOUND );
+	}
+
+	/**
+	 * Opens the file for zero-copy serving. The caller owns the returned channel and must close it.
+	 */
+	public Result<FileChannel> getFileChannel(String fileId, String token) {
+		if(!Token.validateToken(fileId, token)) return error( FORBIDDEN );
+		fileId = fileId.replace( DELIMITER, "/");
+		File file = new File( ROOT + fileId );
+		if( ! file.isFile() )
+			return error( NOT_FOUND );
+		try {
+			return ok( FileChannel.open( file.toPath(), StandardOpenOption.READ ));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return error( NOT_FOUND );
+		}
+	}
+
+	@Override
+	public Result<Void> writeFileStream(String fileId, InputStream data, String token) {
+		if(!Token.validateToken(fileId, token)) return error( FORBIDDEN );
+		fileId = fileId.replace( DELIMITER, "/");
+		File file = new File(ROOT + fileId);
+		file.getParentFile().mkdirs();
+		// The upload is staged outside the lock, which is held only to move it into place...
+		File upload = new File( file.getParentFile(), file.getName() + UPLOAD + Thread.currentThread().getId());
+		if( ! IO.write( upload, data) )
+			return error( INTERNAL_ERROR );
+		return counted( file, () -> IO.move( upload, file )) ? ok() : error( INTERNAL_ERROR );
+	}
+
 	@Override
 	public Result<Void> deleteUserFiles(String userId, String token) {
 		if(!Token.validateToken(userId, token)) return error( FORBIDDEN );
 		File file = new File(ROOT + userId);
+		// A user that never stored a file has nothing to delete, which is not an error...
+		if( ! file.exists() )
+			return ok();
 		try {
 			java.nio.file.Files.walk(file.toPath())
 			.sorted(Comparator.reverseOrder())
 			.map(Path::toFile)
-			.forEach(File::delete);
+			.forEach(f -> counted( f, f::delete ));
 		} catch (IOException e) {
 			e.printStackTrace();
 			return error(INTERNAL_ERROR);
@@ -68,6 +142,42 @@ public class JavaFiles implements Files {
 		return ok();
 	}
 
+	/*
+	 * Runs an update of the file, counting the file if the update creates or deletes it. The updates of
+	 * a file are serialized, so that concurrent writes of a new file count it once.
+	 */
+	private static <T> T counted(File file, Supplier<T> update) {
+		synchronized (locks[Math.floorMod(file.getPath().hashCode(), locks.length)]) {
+			var existed = file.isFile();
+			try {
+				return update.get();
+			} finally {
+				var exists = file.isFile();
+				if( exists != existed )
+					storedFiles.addAndGet( exists ? 1 : -1 );
+			}
+		}
+	}
+
+	private static String rootDir(String dir) {
+		return dir.endsWith("/") ? dir : dir + "/";
+	}
+
+	/*
+	 * The files already stored under ROOT, ie. in the directories of the users.
+	 */
+	private static long countStored() {
+		long count = 0;
+		var dirs = new File( ROOT ).listFiles( File::isDirectory );
+		if( dirs != null )
+			for (var dir : dirs) {
+				var files = dir.listFiles( f -> f.isFile() && ! TEMPORARY.matcher( f.getName() ).matches() );
+				if( files != null )
+					count += files.length;
+			}
+		return count;
+	}
+
 	public static String fileId(String filename, String userId) {
 		return userId + JavaFiles.DELIMITER + filename;
 	}
@@ -3,40 +3,53 @@ package tp1.impl.servers.common;
 import static tp1.api.service.java.Result.error;
 import static tp1.api.service.java.Result.ok;
 import static tp1.api.service.java.Result.ErrorCode.BAD_REQUEST;
-import static tp1.api.service.java.Result.ErrorCode.CONFLICT;
 import static tp1.api.service.java.Result.ErrorCode.FORBIDDEN;
 import static tp1.api.service.java.Result.ErrorCode.NOT_FOUND;
 import static tp1.impl.clients.Clients.DirectoryClients;
 import static tp1.impl.clients.Clients.FilesClients;
 import static util.Hash.of;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import tp1.api.User;
+import tp1.api.UserPage;
 import tp1.api.service.java.Result;
 import tp1.api.service.java.Users;
+import tp1.impl.servers.common.UserOp.Create;
+import tp1.impl.servers.common.UserOp.Delete;
+import tp1.impl.servers.common.UserOp.Update;
+import tp1.impl.servers.kafka.UserEvents;
+import util.Cursor;
+import util.PasswordHash;
 import util.Token;
 
 public class JavaUsers implements Users {
-	final protected Map<String, User> users = new ConcurrentHashMap<>();
+	final protected UserStore users;
 	final ExecutorService executor = Executors.newCachedThreadPool();
+	final UserEvents events = UserEvents.fromProperties();
+	final VerifiedCredentials credentials = new VerifiedCredentials();
+	final NameIndex names = new NameIndex(this::fullNameOf);
+
+	public JavaUsers() {
+		this(UserStore.fromProperties());
+	}
+
+	protected JavaUsers(UserStore users) {
+		this.users = users;
+		for (var user : users.all())
+			names.update(user.userId());
+	}
 	
 	@Override
 	public Result<String> createUser(User user) {
 		if( badUser(user ))
 			return error( BAD_REQUEST );
 		
-		var userId = user.getUserId();
-		var res = users.putIfAbsent(userId, user);
-		
-		if (res != null)
-			return error(CONFLICT);
-		else
-			return ok(userId);
+		var res = submit(new Create(new StoredUser(user)));
+		return res.isOK() ? ok(user.getUserId()) : error(res.error());
 	}
 
 	@Override
@@ -52,7 +65,7 @@ public class JavaUsers implements Users {
 		if (badParam(password) || wrongPassword(user, password))
 			return error(FORBIDDEN);
 		else
-			return ok(user);
+			return ok(user.withPassword(password));
 	}
 
 	@Override
@@ -65,10 +78,15 @@ public class JavaUsers implements Users {
 		
 		if (badParam(password) || wrongPassword(user, password))
 			return error(FORBIDDEN);
-		else {
-			user.updateUser(data);
-			return ok(user);
-		}
+
+		var newPassword = data.getPassword();
+		var res = submit(new Update(userId, user.password(), data.getFullName(), data.getEmail(),
+				newPassword == null ? null : PasswordHash.of(newPassword)));
+		if (!res.isOK())
+			return error(res.error());
+
+		events.publish(userId, UserEvents.UPDATED);
+		return ok(res.value().withPassword(newPassword == null ? password : newPassword));
 	}
 
 	@Override
@@ -81,40 +99,82 @@ public class JavaUsers implements Users {
 		
 		if (badParam(password) || wrongPassword(user, password))
 			return error(FORBIDDEN);
+
+		var res = submit(new Delete(userId, user.password()));
+		if (!res.isOK())
+			return error(res.error());
 		else {
-			users.remove(userId);
+			events.publish(userId, UserEvents.DELETED);
 			executor.execute(()->{
 				DirectoryClients.get().deleteUserFiles(userId, password, Token.createToken(userId, System.currentTimeMillis()));
 				for( var uri : FilesClients.all())
 					FilesClients.get(uri).deleteUserFiles( userId, Token.createToken(userId, System.currentTimeMillis()));
 			});
-			return ok(user);
+			return ok(user.withPassword(password));
 		}
 	}
 
 	@Override
 	public Result<List<User>> searchUsers(String pattern) {
-		if( badParam( pattern))
+		var res = searchUsersPage(pattern, 0, null);
+		return res.isOK() ? ok(res.value().getUsers()) : error(res.error());
+	}
+
+	@Override
+	public Result<UserPage> searchUsersPage(String pattern, int limit, String cursor) {
+		if (badParam(pattern) || limit < 0)
 			return error(BAD_REQUEST);
-					
-		var hits = users.values()
-			.stream()
-			.filter( u -> u.getFullName().toLowerCase().contains(pattern.toLowerCase()) )
-			.map( User::secureCopy )
-			.toList();
-		
-		return ok(hits);
+
+		String after;
+		try {
+			after = Cursor.keyOf(cursor);
+		} catch (IllegalArgumentException x) {
+			return error(BAD_REQUEST);
+		}
+
+		var hits = new ArrayList<User>();
+		String last = null;
+		var it = names.search(pattern.toLowerCase(), after);
+		while (it.hasNext() && (limit == 0 || hits.size() < limit)) {
+			last = it.next();
+			var user = users.get(last);
+			if (user != null)
+				hits.add(user.profile());
+		}
+		return ok(new UserPage(hits, it.hasNext() ? Cursor.after(last) : null));
 	}
 	
+	/*
+	 * Submits a mutation to be applied to the users, and returns its result.
+	 */
+	protected Result<StoredUser> submit(UserOp op) {
+		return apply(op);
+	}
+
+	/*
+	 * Applies a mutation to the users and reindexes the user it changed.
+	 */
+	protected Result<StoredUser> apply(UserOp op) {
+		var res = op.applyTo(users);
+		if (res.isOK())
+			names.update(op.userId());
+		return res;
+	}
+
 	private boolean badParam( String str ) {
 		return str == null;
 	}
 	
 	private boolean badUser( User user ) {
-		return user == null || badParam(user.getEmail()) || badParam(user.getFullName()) || badParam( user.getPassword());
+		return user == null || badParam(user.getUserId()) || badParam(user.getEmail()) || badParam(user.getFullName()) || badParam( user.getPassword());
 	}
 	
-	private boolean wrongPassword(User user, String password) {
-		return !user.getPassword().equals(password);
+	private String fullNameOf(String userId) {
+		var user = users.get(userId);
+		return user == null ? null : user.profile().getFullName();
+	}
+
+	private boolean wrongPassword(StoredUser user, String password) {
+		return !credentials.verify(user.userId(), password, user.password());
 	}
 }
@@ -0,0 +1,31 @@
+package tp1.impl.servers.common;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ *
+ * Places files on the servers holding the fewest files.
+ *
+ * Sorts all the servers on every placement, O(N log N).
+ *
+ */
+public class LeastLoadedPlacement implements PlacementStrategy {
+
+	final ToLongFunction<URI> load;
+
+	public LeastLoadedPlacement(ToLongFunction<URI> load) {
+		this.load = load;
+	}
+
+	@Override
+	public List<URI> place(String fileId, Collection<URI> servers, int count) {
+		return servers.stream()
+				.sorted(Comparator.comparingLong(load))
+				.limit(count)
+				.toList();
+	}
+}
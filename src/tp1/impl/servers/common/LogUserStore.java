@@ -0,0 +1,155 @@
+package tp1.impl.servers.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import util.LogStore;
+
+/**
+ *
+ * Durable storage of users: the users are kept in memory, and every change is
+ * appended to a write-ahead log before it is acknowledged, with concurrent changes
+ * sharing a single fsync. The log is compacted into periodic snapshots, so a
+ * restart only reads one snapshot plus the changes made since.
+ *
+ */
+class LogUserStore extends LogStore<StoredUser> implements UserStore {
+
+	private static final int SNAPSHOT_MAGIC = 0x55535231;
+	private static final byte PUT = 1, REMOVE = 2;
+
+	final Map<String, StoredUser> users = new ConcurrentHashMap<>();
+
+	LogUserStore(Path dir, long snapshotEvery) {
+		super(dir, snapshotEvery, SNAPSHOT_MAGIC);
+	}
+
+	/**
+	 * Opens the store kept in the given directory, recovering its users.
+	 */
+	static LogUserStore open(Path dir, long snapshotEvery) {
+		var store = new LogUserStore(dir, snapshotEvery);
+		try {
+			store.recover((user) -> store.users.put(user.userId(), user), store::replay);
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+		return store;
+	}
+
+	@Override
+	public StoredUser get(String userId) {
+		return users.get(userId);
+	}
+
+	@Override
+	public boolean putIfAbsent(StoredUser user) {
+		return update(user.userId(), (k, current) -> current == null ? user : current);
+	}
+
+	@Override
+	public boolean replace(StoredUser current, StoredUser updated) {
+		return update(current.userId(), (k, user) -> user == current ? updated : user);
+	}
+
+	@Override
+	public boolean remove(StoredUser current) {
+		return update(current.userId(), (k, user) -> user == current ? null : user);
+	}
+
+	@Override
+	public Collection<StoredUser> all() {
+		return users.values();
+	}
+
+	/*
+	 * Applies an update atomically, logging its outcome in the same order the updates are applied;
+	 * returns once the outcome is durable, or false if the update changed nothing.
+	 */
+	private boolean update(String userId, BiFunction<String, StoredUser, StoredUser> update) {
+		var logged = new AtomicReference<CompletableFuture<Void>>();
+		logging(() -> users.compute(userId, (k, user) -> {
+			var updated = update.apply(k, user);
+			if (updated != user)
+				logged.set(log(updated != null ? put(updated) : remove(userId)));
+			return updated;
+		}));
+		if (logged.get() == null)
+			return false;
+
+		logged.get().join();
+		maybeSnapshot(users.values());
+		return true;
+	}
+
+	private void replay(byte[] data) {
+		try {
+			var in = new DataInputStream(new ByteArrayInputStream(data));
+			byte type = in.readByte();
+			switch (type) {
+			case PUT:
+				var user = StoredUser.readFrom(in);
+				users.put(user.userId(), user);
+				break;
+			case REMOVE:
+				users.remove(in.readUTF());
+				break;
+			default:
+				throw new IOException("Unknown user operation: " + type);
+			}
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+	}
+
+	private static byte[] put(StoredUser user) {
+		return encode((out) -> {
+			out.writeByte(PUT);
+			user.writeTo(out);
+		});
+	}
+
+	private static byte[] remove(String userId) {
+		return encode((out) -> {
+			out.writeByte(REMOVE);
+			out.writeUTF(userId);
+		});
+	}
+
+	interface Encoder {
+		void writeTo(DataOutput out) throws IOException;
+	}
+
+	private static byte[] encode(Encoder encoder) {
+		try {
+			var bytes = new ByteArrayOutputStream();
+			encoder.writeTo(new DataOutputStream(bytes));
+			return bytes.toByteArray();
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+	}
+
+	@Override
+	protected void writeEntry(DataOutput out, StoredUser user) throws IOException {
+		user.writeTo(out);
+	}
+
+	@Override
+	protected StoredUser readEntry(DataInput in) throws IOException {
+		return StoredUser.readFrom(in);
+	}
+}
@@ -0,0 +1,38 @@
+package tp1.impl.servers.common;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Volatile storage of users, lost when the process exits.
+ */
+class MemoryUserStore implements UserStore {
+
+	final Map<String, StoredUser> users = new ConcurrentHashMap<>();
+
+	@Override
+	public StoredUser get(String userId) {
+		return users.get(userId);
+	}
+
+	@Override
+	public boolean putIfAbsent(StoredUser user) {
+		return users.putIfAbsent(user.userId(), user) == null;
+	}
+
+	@Override
+	public boolean replace(StoredUser current, StoredUser updated) {
+		return users.replace(current.userId(), current, updated);
+	}
+
+	@Override
+	public boolean remove(StoredUser current) {
+		return users.remove(current.userId(), current);
+	}
+
+	@Override
+	public Collection<StoredUser> all() {
+		return users.values();
+	}
+}
@@ -0,0 +1,166 @@
+package tp1.impl.servers.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ *
+ * Trigram index over the full names of the users, for case-insensitive substring search.
+ *
+ * Each trigram of a (lowercased) name maps to the sorted set of ids of the users whose
+ * names contain it. A pattern with three or more characters can only occur in the
+ * names that contain all its trigrams, so a search walks the smallest of their sets,
+ * probes the others, and checks the survivors against the indexed names. Shorter
+ * patterns fall back to a scan of all the ids, in order.
+ *
+ * Results come out sorted by user id, so a search can resume after a given id.
+ *
+ */
+class NameIndex {
+
+	static final int N = 3;
+
+	record Posting(NavigableSet<String> ids, AtomicInteger size) {
+		Posting() {
+			this(new ConcurrentSkipListSet<>(), new AtomicInteger());
+		}
+
+		void add(String id) {
+			if (ids.add(id))
+				size.incrementAndGet();
+		}
+
+		void remove(String id) {
+			if (ids.remove(id))
+				size.decrementAndGet();
+		}
+	}
+
+	private final Function<String, String> nameOf;
+	private final Map<String, String> names = new ConcurrentHashMap<>();
+	private final NavigableSet<String> ids = new ConcurrentSkipListSet<>();
+	private final Map<String, Posting> postings = new ConcurrentHashMap<>();
+
+	/**
+	 * @param nameOf - returns the current full name of a user, or null if the user does not exist.
+	 */
+	NameIndex(Function<String, String> nameOf) {
+		this.nameOf = nameOf;
+	}
+
+	/**
+	 * Reindexes a user after it was created, updated or deleted.
+	 * 
+	 * The name is read from the source while the entry of the user is locked, so the
+	 * index ends up with the latest name, regardless of the order concurrent updates
+	 * of the same user are reindexed.
+	 */
+	void update(String userId) {
+		names.compute(userId, (k, old) -> {
+			var name = nameOf.apply(userId);
+			var now = name == null ? null : name.toLowerCase();
+			var before = trigrams(old);
+			var after = trigrams(now);
+			for (var t : before)
+				if (!after.contains(t))
+					postings.get(t).remove(userId);
+			for (var t : after)
+				if (!before.contains(t))
+					postings.computeIfAbsent(t, (x) -> new Posting()).add(userId);
+			if (now == null)
+				ids.remove(userId);
+			else
+				ids.add(AclIndex.intern(userId));
+			return now;
+		});
+	}
+
+	/**
+	 * Returns, in order, the ids of the users whose names contain the pattern, that come
+	 * after the given user id, or all of them if null.
+	 * 
+	 * @param pattern - lowercased pattern.
+	 */
+	Iterator<String> search(String pattern, String after) {
+		Posting smallest = null;
+		var probes = new ArrayList<NavigableSet<String>>();
+		for (var t : trigrams(pattern)) {
+			var p = postings.get(t);
+			if (p == null || p.size().get() == 0)
+				return Collections.emptyIterator();
+			probes.add(p.ids());
+			if (smallest == null || p.size().get() < smallest.size().get())
+				smallest = p;
+		}
+
+		var candidates = smallest == null ? ids : smallest.ids();
+		probes.removeIf(p -> p == candidates);
+		var tail = after == null ? candidates : candidates.tailSet(after, false);
+		return new Matches(tail.iterator(), probes, pattern);
+	}
+
+	private static Set<String> trigrams(String name) {
+		if (name == null || name.length() < N)
+			return Collections.emptySet();
+
+		var res = new HashSet<String>();
+		for (int i = 0; i + N <= name.length(); i++)
+			res.add(name.substring(i, i + N));
+		return res;
+	}
+
+	/*
+	 * Filters the candidates to those in all the probed postings, whose names contain the pattern.
+	 */
+	private class Matches implements Iterator<String> {
+		final Iterator<String> candidates;
+		final List<NavigableSet<String>> probes;
+		final String pattern;
+		String next;
+
+		Matches(Iterator<String> candidates, List<NavigableSet<String>> probes, String pattern) {
+			this.candidates = candidates;
+			this.probes = probes;
+			this.pattern = pattern;
+			this.next = advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public String next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			var res = next;
+			next = advance();
+			return res;
+		}
+
+		private String advance() {
+			next: while (candidates.hasNext()) {
+				var id = candidates.next();
+				for (var p : probes)
+					if (!p.contains(id))
+						continue next;
+				var name = names.get(id);
+				if (name != null && name.contains(pattern))
+					return id;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package tp1.impl.servers.common;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ *
+ * Decides which Files servers should hold the replicas of a file.
+ *
+ * The strategy is chosen with -Ddir.placement, either "least-loaded" (the default)
+ * or "hash", for consistent hashing. The number of virtual nodes per server of the
+ * hash ring is set with -Ddir.placement.vnodes, and scaled by the weight of the server.
+ *
+ */
+public interface PlacementStrategy {
+
+	static final String PLACEMENT = "dir.placement";
+	static final String VNODES = "dir.placement.vnodes";
+
+	static final String LEAST_LOADED = "least-loaded";
+	static final String HASH = "hash";
+
+	/**
+	 * Returns up to count of the given servers, in order of preference, to hold the file.
+	 */
+	List<URI> place(String fileId, Collection<URI> servers, int count);
+
+	/**
+	 * Tells the strategy that a server joined or left, for strategies that keep their own view
+	 * of the servers, rather than working it out from the servers given on every placement.
+	 */
+	default void changed(URI server, boolean joined) {
+	}
+
+	/**
+	 * Returns the strategy configured for this deployment.
+	 *
+	 * @param load   - the number of files currently assigned to a server.
+	 * @param weight - the share of the files a server should get, relative to the others, or NaN if unknown.
+	 */
+	static PlacementStrategy fromProperties(ToLongFunction<URI> load, ToDoubleFunction<URI> weight) {
+		var name = System.getProperty(PLACEMENT, LEAST_LOADED).trim();
+		switch (name) {
+		case LEAST_LOADED:
+			return new LeastLoadedPlacement(load);
+		case HASH:
+			return new ConsistentHashPlacement(Integer.getInteger(VNODES, ConsistentHashPlacement.DEFAULT_VNODES), weight);
+		default:
+			throw new IllegalArgumentException("Unknown placement strategy: " + name);
+		}
+	}
+}
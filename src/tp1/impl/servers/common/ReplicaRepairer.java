@@ -0,0 +1,201 @@
+package tp1.impl.servers.common;
+
+import static tp1.impl.clients.Clients.FilesClients;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import tp1.impl.servers.common.DirectoryCommand.SetReplicas;
+import tp1.impl.servers.common.JavaDirectory.ExtendedFileInfo;
+import util.Token;
+
+/**
+ *
+ * Background task that restores the replication level of files whose replicas are
+ * on Files servers that are gone.
+ *
+ * A server is considered gone if it is no longer announced in Discovery, or if a
+ * repair copy to or from it failed recently; servers leaving Discovery trigger a repair
+ * right away. Missing replicas are copied from a
+ * surviving replica to the servers chosen by the placement strategy. The copies are streamed, and
+ * throttled to a bandwidth budget, set in bytes/second with -Ddir.repairBandwidth,
+ * so that repair traffic does not starve foreground requests.
+ *
+ */
+class ReplicaRepairer {
+	private static Logger Log = Logger.getLogger(ReplicaRepairer.class.getName());
+
+	static final long REPAIR_PERIOD = 5000;
+	static final long SUSPECT_PERIOD = 30000;
+	static final String BANDWIDTH = "dir.repairBandwidth";
+	static final long DEFAULT_BANDWIDTH = 10 * 1024 * 1024;
+
+	final JavaDirectory dir;
+	final RateLimiter bandwidth;
+	final Map<URI, Long> suspects = new ConcurrentHashMap<>();
+	final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	ReplicaRepairer(JavaDirectory dir) {
+		this.dir = dir;
+		this.bandwidth = RateLimiter.create(Long.getLong(BANDWIDTH, DEFAULT_BANDWIDTH));
+	}
+
+	void start() {
+		scheduler.scheduleWithFixedDelay(this::repairAll, REPAIR_PERIOD, REPAIR_PERIOD, TimeUnit.MILLISECONDS);
+		FilesClients.subscribe((uri, joined) -> {
+			if (!joined)
+				scheduler.execute(this::repairAll);
+		});
+	}
+
+	/**
+	 * Marks a server as failing, excluding it from repairs for a while.
+	 */
+	void suspect(URI server) {
+		suspects.put(server, System.currentTimeMillis());
+	}
+
+	private void repairAll() {
+		try {
+			var live = liveServers();
+			for (var file : dir.files.values())
+				if (needsRepair(file, live))
+					repair(file.fileId(), live);
+		} catch (Exception x) {
+			x.printStackTrace();
+		}
+	}
+
+	private boolean needsRepair(ExtendedFileInfo file, Set<URI> live) {
+		if (file == null)
+			return false;
+		var policy = dir.policies.forUser(file.info().getOwner());
+		var healthy = healthy(file, live).size();
+		return healthy > 0 && healthy < Math.min(policy.replicas(), live.size());
+	}
+
+	private List<String> healthy(ExtendedFileInfo file, Set<URI> live) {
+		return file.uris().stream().filter(u -> live.contains(dir.URIfromURL(u))).toList();
+	}
+
+	/*
+	 * Takes the turn of the file, as writes and deletes do, so that neither they nor their
+	 * late replicas can interleave with the repair; files being written are left for later.
+	 */
+	private void repair(String fileId, Set<URI> live) {
+		var turn = new CompletableFuture<Void>();
+		if (!dir.tryTurn(fileId, turn))
+			return;
+		try {
+			var file = dir.files.get(fileId);
+			if (needsRepair(file, live))
+				repair(file, healthy(file, live), live);
+		} finally {
+			dir.endTurn(fileId, turn);
+		}
+	}
+
+	/*
+	 * Copies the file from a healthy replica to new servers, replacing the replicas that are gone.
+	 */
+	private void repair(ExtendedFileInfo file, List<String> healthy, Set<URI> live) {
+		var fileId = file.fileId();
+		var storageId = file.storageId();
+		var source = dir.URIfromURL(healthy.get(0));
+		var missing = dir.policies.forUser(file.info().getOwner()).replicas() - healthy.size();
+
+		var targets = dir.orderCandidateFileServers(fileId, null, live.size(), Level.FINE)
+				.stream()
+				.filter(u -> live.contains(u) && !file.uris().contains(JavaDirectory.fileURL(u, storageId)))
+				.limit(missing)
+				.toList();
+
+		var dead = file.uris().stream().filter(u -> !healthy.contains(u)).toList();
+		var current = file;
+		for (var target : targets) {
+			if (!copy(storageId, source, target))
+				continue;
+
+			var fileURL = JavaDirectory.fileURL(target, storageId);
+			var uris = current.withoutReplicas(dead).withReplica(fileURL).uris();
+			var updated = dir.submit(new SetReplicas(fileId, current.uris(), uris));
+			if (updated == null || !updated.uris().equals(uris)) {
+				// the file was deleted or rewritten meanwhile, the copy is stale...
+				if (updated == null || !updated.uris().contains(fileURL))
+					FilesClients.get(target).deleteFile(storageId, Token.createToken(storageId, System.currentTimeMillis()));
+				return;
+			}
+			current = updated;
+			Log.info(String.format("Repaired replica of %s: %s -> %s\n", fileId, source, target));
+		}
+	}
+
+	private boolean copy(String storageId, URI source, URI target) {
+		var res = FilesClients.get(source).getFileStream(storageId, Token.createToken(storageId, System.currentTimeMillis()));
+		if (!res.isOK()) {
+			suspect(source);
+			return false;
+		}
+		try (var in = new ThrottledInputStream(res.value(), bandwidth)) {
+			var written = FilesClients.get(target).writeFileStream(storageId, in, Token.createToken(storageId, System.currentTimeMillis()));
+			if (!written.isOK())
+				suspect(target);
+			return written.isOK();
+		} catch (IOException x) {
+			x.printStackTrace();
+			return false;
+		}
+	}
+
+	private Set<URI> liveServers() {
+		long now = System.currentTimeMillis();
+		suspects.values().removeIf(t -> now - t > SUSPECT_PERIOD);
+
+		var live = new HashSet<>(FilesClients.all());
+		live.removeAll(suspects.keySet());
+		return live;
+	}
+
+	/*
+	 * Reads from the wrapped stream no faster than the rate limiter allows.
+	 */
+	static class ThrottledInputStream extends FilterInputStream {
+		final RateLimiter limiter;
+
+		ThrottledInputStream(InputStream in, RateLimiter limiter) {
+			super(in);
+			this.limiter = limiter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				limiter.acquire(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				limiter.acquire(n);
+			return n;
+		}
+	}
+}
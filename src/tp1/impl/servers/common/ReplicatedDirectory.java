@@ -0,0 +1,51 @@
+package tp1.impl.servers.common;
+
+import java.util.Optional;
+
+import tp1.impl.servers.common.JavaDirectory.ExtendedFileInfo;
+import tp1.impl.servers.kafka.OpCodec;
+import tp1.impl.servers.kafka.ReplicatedLog;
+
+/**
+ *
+ * A replica of the Directory service.
+ *
+ * Mutations of the metadata are ordered through a Kafka topic and applied by every
+ * replica, in the same order; reads are served from the local state, so they scale
+ * with the number of replicas, and any replica can take over from a failed one. The
+ * topic holds the state, so the metadata is kept in memory.
+ *
+ * The contents of the files are written to, and deleted from, the Files servers by
+ * the replica that received the request. Replicas of the files are repaired only by
+ * the replicas started with -Ddir.repair=true, which should be just one.
+ *
+ */
+public class ReplicatedDirectory extends JavaDirectory {
+
+	static final OpCodec<DirectoryCommand> CODEC = new OpCodec<>((out, op) -> op.writeTo(out), DirectoryCommand::readFrom);
+
+	static final String TOPIC = "directory_ops";
+	static final String REPAIR = "dir.repair";
+
+	final ReplicatedLog<DirectoryCommand, Optional<ExtendedFileInfo>> log;
+
+	public ReplicatedDirectory(String brokers) {
+		super(null, false);
+		this.log = new ReplicatedLog<>(brokers, TOPIC, CODEC, (cmd) -> Optional.ofNullable(apply(cmd)));
+		this.log.start();
+		if (Boolean.getBoolean(REPAIR))
+			repairer.start();
+	}
+
+	public ReplicatedLog<?, ?> log() {
+		return log;
+	}
+
+	@Override
+	protected ExtendedFileInfo submit(DirectoryCommand cmd) {
+		var res = log.trySubmit(cmd);
+		if (res.result() == null)
+			throw new SubmitException(cmd, res.published());
+		return res.result().orElse(null);
+	}
+}
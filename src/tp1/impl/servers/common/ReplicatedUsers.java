@@ -0,0 +1,45 @@
+package tp1.impl.servers.common;
+
+import static tp1.api.service.java.Result.error;
+import static tp1.api.service.java.Result.ErrorCode.INTERNAL_ERROR;
+
+import tp1.api.service.java.Result;
+import tp1.impl.servers.kafka.OpCodec;
+import tp1.impl.servers.kafka.ReplicatedLog;
+
+/**
+ *
+ * A replica of the Users service.
+ *
+ * Mutations are ordered through a Kafka topic and applied by every replica, in the
+ * same order; reads are served from the local state, so they scale with the number
+ * of replicas. The topic holds the state, so the users are kept in memory.
+ *
+ * Side effects of mutations, like publishing user events or deleting the files of
+ * deleted users, are performed only by the replica that received the request.
+ *
+ */
+public class ReplicatedUsers extends JavaUsers {
+
+	static final OpCodec<UserOp> CODEC = new OpCodec<>((out, op) -> op.writeTo(out), UserOp::readFrom);
+
+	static final String TOPIC = "users_ops";
+
+	final ReplicatedLog<UserOp, Result<StoredUser>> log;
+
+	public ReplicatedUsers(String brokers) {
+		super(new MemoryUserStore());
+		this.log = new ReplicatedLog<>(brokers, TOPIC, CODEC, this::apply);
+		this.log.start();
+	}
+
+	public ReplicatedLog<?, ?> log() {
+		return log;
+	}
+
+	@Override
+	protected Result<StoredUser> submit(UserOp op) {
+		var res = log.submit(op);
+		return res == null ? error(INTERNAL_ERROR) : res;
+	}
+}
@@ -0,0 +1,127 @@
+package tp1.impl.servers.common;
+
+import static tp1.api.service.java.Result.error;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import tp1.api.service.java.Result;
+import tp1.api.service.java.Result.ErrorCode;
+
+/**
+ *
+ * A write of one file to several Files servers, issued concurrently.
+ *
+ * Writes go to the first candidates, each failed write being replaced by a write to
+ * the next candidate. The caller blocks only until the write quorum is reached; the
+ * remaining replicas can then be completed in the background.
+ *
+ * Not thread-safe: the acknowledgments are consumed by the caller thread, and then,
+ * after finishInBackground, by a single background task.
+ *
+ */
+class ReplicatedWrite {
+	private static Logger Log = Logger.getLogger(ReplicatedWrite.class.getName());
+
+	record Ack(URI uri, Result<Void> result) {
+	}
+
+	private final String fileId;
+	private final Queue<URI> candidates;
+	private final Function<URI, Result<Void>> writer;
+	private final CompletionService<Ack> completions;
+	private final List<URI> acked = new ArrayList<>();
+	private final CompletableFuture<List<URI>> completion = new CompletableFuture<>();
+
+	private int pending;
+
+	ReplicatedWrite(Executor executor, String fileId, Queue<URI> candidates, int replicas, Function<URI, Result<Void>> writer) {
+		this.fileId = fileId;
+		this.writer = writer;
+		this.candidates = candidates;
+		this.completions = new ExecutorCompletionService<>(executor);
+		while (pending < replicas && !candidates.isEmpty())
+			submitNext();
+	}
+
+	/**
+	 * Blocks until the given number of replicas acknowledged the write, or there are
+	 * no more candidates to try.
+	 *
+	 * @return the servers that acknowledged the write, so far.
+	 */
+	List<URI> awaitAcks(int quorum) {
+		while (acked.size() < quorum && pending > 0)
+			takeNext();
+		return new ArrayList<>(acked);
+	}
+
+	/**
+	 * Lets the outstanding replica writes complete in the background, reporting each
+	 * acknowledgment that arrives from now on.
+	 *
+	 * @return a future completed with all the servers that acknowledged the write.
+	 */
+	CompletableFuture<List<URI>> finishInBackground(Executor executor, Consumer<URI> onLateAck) {
+		if (pending == 0)
+			completion.complete(acked);
+		else
+			executor.execute(() -> {
+				while (pending > 0) {
+					var uri = takeNext();
+					if (uri != null)
+						onLateAck.accept(uri);
+				}
+				completion.complete(acked);
+			});
+		return completion;
+	}
+
+	CompletableFuture<List<URI>> completion() {
+		return completion;
+	}
+
+	/*
+	 * Waits for the next write to complete.
+	 * Returns the uri of the server, if the write succeeded, or null otherwise.
+	 */
+	private URI takeNext() {
+		try {
+			var ack = completions.take().get();
+			pending--;
+			if (ack.result().isOK()) {
+				acked.add(ack.uri());
+				return ack.uri();
+			}
+			Log.info(String.format("Files.writeFile(...) to %s failed with: %s %s\n", ack.uri(), ack.result(), fileId));
+			if (!candidates.isEmpty())
+				submitNext();
+		} catch (InterruptedException | ExecutionException x) {
+			x.printStackTrace();
+			pending--;
+		}
+		return null;
+	}
+
+	private void submitNext() {
+		var uri = candidates.remove();
+		pending++;
+		completions.submit(() -> {
+			try {
+				return new Ack(uri, writer.apply(uri));
+			} catch (RuntimeException x) {
+				return new Ack(uri, error(ErrorCode.INTERNAL_ERROR));
+			}
+		});
+	}
+}
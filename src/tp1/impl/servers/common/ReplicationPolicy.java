@@ -0,0 +1,84 @@
+package tp1.impl.servers.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * Replication settings of the directory.
+ *
+ * replicas (N) - the number of Files servers that should hold each file;
+ * writeQuorum (W) - the number of replicas that must acknowledge a write before it returns,
+ * the others complete in the background;
+ * readReplicas (R) - the number of replicas offered to readers of a file.
+ *
+ * The defaults are set per deployment with system properties, eg. -Ddir.replicas=3 -Ddir.writeQuorum=1,
+ * and can be overridden for a given user, eg. -Ddir.writeQuorum.smd=3
+ *
+ */
+public record ReplicationPolicy(int replicas, int writeQuorum, int readReplicas) {
+
+	static final String REPLICAS = "dir.replicas";
+	static final String WRITE_QUORUM = "dir.writeQuorum";
+	static final String READ_REPLICAS = "dir.readReplicas";
+
+	static final int DEFAULT_REPLICAS = 2;
+
+	public ReplicationPolicy {
+		if (replicas < 1 || writeQuorum < 1 || writeQuorum > replicas || readReplicas < 1)
+			throw new IllegalArgumentException(String.format("Bad replication policy: N=%d, W=%d, R=%d", replicas, writeQuorum, readReplicas));
+	}
+
+	/**
+	 * The policies of a deployment: the default one, and those of the users that override it.
+	 */
+	public record Policies(ReplicationPolicy defaults, Map<String, ReplicationPolicy> byUser) {
+
+		public ReplicationPolicy forUser(String userId) {
+			return userId == null ? defaults : byUser.getOrDefault(userId, defaults);
+		}
+	}
+
+	/**
+	 * Reads the policies from the system properties, once, at startup. Unless set, W and R
+	 * default to N, and W is never larger than N.
+	 *
+	 * @throws IllegalArgumentException if a property is not a valid number, or a policy is invalid.
+	 */
+	public static Policies fromProperties() {
+		var defaults = policy(null);
+
+		var byUser = new HashMap<String, ReplicationPolicy>();
+		for (var name : System.getProperties().stringPropertyNames())
+			for (var prefix : new String[] { REPLICAS, WRITE_QUORUM, READ_REPLICAS })
+				if (name.startsWith(prefix + ".")) {
+					var userId = name.substring(prefix.length() + 1);
+					byUser.computeIfAbsent(userId, ReplicationPolicy::policy);
+				}
+		return new Policies(defaults, Map.copyOf(byUser));
+	}
+
+	private static ReplicationPolicy policy(String userId) {
+		var n = property(REPLICAS, userId);
+		var w = property(WRITE_QUORUM, userId);
+		var r = property(READ_REPLICAS, userId);
+
+		int replicas = n == null ? DEFAULT_REPLICAS : n;
+		return new ReplicationPolicy(replicas, w == null ? replicas : Math.min(w, replicas), r == null ? replicas : r);
+	}
+
+	/*
+	 * Looks up the user specific value of a property, falling back to the deployment value.
+	 */
+	private static Integer property(String name, String userId) {
+		var key = userId == null ? null : name + "." + userId;
+		var value = key == null ? null : System.getProperty(key);
+		if (value == null)
+			value = System.getProperty(key = name);
+		try {
+			return value == null ? null : Integer.valueOf(value.trim());
+		} catch (NumberFormatException x) {
+			throw new IllegalArgumentException(String.format("Bad value of -D%s: %s", key, value));
+		}
+	}
+}
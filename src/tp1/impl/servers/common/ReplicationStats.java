@@ -0,0 +1,44 @@
+package tp1.impl.servers.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * Counts how many replicas file writes end up reaching, and how often the write quorum is missed.
+ *
+ */
+public class ReplicationStats {
+
+	final Map<Integer, LongAdder> levels = new ConcurrentHashMap<>();
+	final LongAdder quorumMisses = new LongAdder();
+
+	/**
+	 * Records the outcome of a write, once all its replicas have completed.
+	 */
+	public void record(int acks, boolean quorumMet) {
+		levels.computeIfAbsent(acks, (k) -> new LongAdder()).increment();
+		if (!quorumMet)
+			quorumMisses.increment();
+	}
+
+	/**
+	 * Returns, for each number of acknowledged replicas, how many writes reached it.
+	 */
+	public Map<Integer, Long> levels() {
+		var res = new TreeMap<Integer, Long>();
+		levels.forEach((k, v) -> res.put(k, v.sum()));
+		return res;
+	}
+
+	public long quorumMisses() {
+		return quorumMisses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ReplicationStats [levels=%s, quorumMisses=%d]", levels(), quorumMisses());
+	}
+}
@@ -0,0 +1,55 @@
+package tp1.impl.servers.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import tp1.api.User;
+import util.PasswordHash;
+
+/**
+ * A user, as stored: the profile is kept without its password, which is kept only as a salted hash.
+ */
+record StoredUser(User profile, PasswordHash password) {
+
+	StoredUser(User user) {
+		this(user.secureCopy(), PasswordHash.of(user.getPassword()));
+	}
+
+	String userId() {
+		return profile.getUserId();
+	}
+
+	User withPassword(String password) {
+		return new User(profile.getUserId(), profile.getFullName(), profile.getEmail(), password);
+	}
+
+	void writeTo(DataOutput out) throws IOException {
+		out.writeUTF(profile.getUserId());
+		out.writeUTF(profile.getFullName());
+		out.writeUTF(profile.getEmail());
+		writeHash(out, password);
+	}
+
+	static StoredUser readFrom(DataInput in) throws IOException {
+		var profile = new User(in.readUTF(), in.readUTF(), in.readUTF(), "");
+		return new StoredUser(profile, readHash(in));
+	}
+
+	static void writeHash(DataOutput out, PasswordHash password) throws IOException {
+		out.writeInt(password.iterations());
+		out.writeShort(password.salt().length);
+		out.write(password.salt());
+		out.writeShort(password.hash().length);
+		out.write(password.hash());
+	}
+
+	static PasswordHash readHash(DataInput in) throws IOException {
+		int iterations = in.readInt();
+		var salt = new byte[in.readShort()];
+		in.readFully(salt);
+		var hash = new byte[in.readShort()];
+		in.readFully(hash);
+		return new PasswordHash(iterations, salt, hash);
+	}
+}
@@ -0,0 +1,241 @@
+package tp1.impl.servers.common;
+
+import static tp1.api.service.java.Result.error;
+import static tp1.api.service.java.Result.ErrorCode.BAD_REQUEST;
+import static tp1.impl.clients.Clients.UsersClients;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import tp1.api.User;
+import tp1.api.service.java.Result;
+import tp1.api.service.java.Result.ErrorCode;
+import util.KeyedDigest;
+
+/**
+ *
+ * Cache of the results of authenticating users against the Users service.
+ *
+ * - Concurrent lookups of the same credentials share a single call to the Users service;
+ * - After the refresh period, an entry is still served while it is reloaded in the background;
+ * entries are dropped only after the expiration period, or when the cache is full;
+ * - Unknown users and wrong passwords are cached only briefly;
+ * - Failures to reach the Users service are not cached;
+ * - Passwords are not part of the keys, which hold a keyed digest of them instead.
+ *
+ * When the Users service pushes invalidations to this process, the cached results of a user
+ * are dropped as soon as the user changes, and the periods are much longer. Otherwise, a
+ * changed password may still be accepted until the entry expires, after 3s by default.
+ *
+ * The periods and size are set with -Ddir.userCache.refresh, -Ddir.userCache.expire,
+ * -Ddir.userCache.negative (milliseconds) and -Ddir.userCache.size.
+ *
+ * The hit rate of the cache is logged every -Ddir.userCache.statsPeriod ms, 0 to disable.
+ *
+ */
+class UserCache {
+	private static Logger Log = Logger.getLogger(UserCache.class.getName());
+
+	static final String REFRESH = "dir.userCache.refresh";
+	static final String EXPIRE = "dir.userCache.expire";
+	static final String NEGATIVE = "dir.userCache.negative";
+	static final String SIZE = "dir.userCache.size";
+	static final String STATS_PERIOD = "dir.userCache.statsPeriod";
+
+	static final long DEFAULT_REFRESH = 1000;
+	static final long DEFAULT_EXPIRE = 3000;
+	static final long DEFAULT_PUSHED_REFRESH = 60000;
+	static final long DEFAULT_PUSHED_EXPIRE = 600000;
+	static final long DEFAULT_NEGATIVE = 1000;
+	static final long DEFAULT_SIZE = 10000;
+	static final long DEFAULT_STATS_PERIOD = 60000;
+	static final int MIN_PRUNE = 1024;
+
+	record Credentials(String userId, String digest) {
+	}
+
+	/*
+	 * A cached result; negative results carry their own, shorter, expiration.
+	 * The fetch time tells if the result might predate an invalidation of the user.
+	 * The password is kept with the result, to refresh it.
+	 */
+	record Entry(Result<User> result, String password, long fetched, long expires) {
+		boolean expired() {
+			return System.currentTimeMillis() > expires;
+		}
+	}
+
+	/*
+	 * Signals a failure that must not be cached.
+	 */
+	static class LoadFailure extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		final ErrorCode error;
+
+		LoadFailure(ErrorCode error) {
+			super(error.toString(), null, false, false);
+			this.error = error;
+		}
+	}
+
+	final long negativeTTL = Long.getLong(NEGATIVE, DEFAULT_NEGATIVE);
+	final ExecutorService reloader = Executors.newCachedThreadPool();
+	final Map<String, Set<Credentials>> byUser = new ConcurrentHashMap<>();
+	final Map<String, Long> invalidated = new ConcurrentHashMap<>();
+	final long expireNanos;
+	private volatile int pruneAt = MIN_PRUNE;
+	private CacheStats loggedStats;
+	final KeyedDigest digest = new KeyedDigest();
+	final LoadingCache<Credentials, Entry> cache;
+
+	/**
+	 * @param pushed - true if changes to users are pushed to this process.
+	 */
+	UserCache(boolean pushed) {
+		var refresh = Long.getLong(REFRESH, pushed ? DEFAULT_PUSHED_REFRESH : DEFAULT_REFRESH);
+		var expire = Long.getLong(EXPIRE, pushed ? DEFAULT_PUSHED_EXPIRE : DEFAULT_EXPIRE);
+		this.expireNanos = TimeUnit.MILLISECONDS.toNanos(expire);
+
+		this.cache = CacheBuilder.newBuilder()
+				.refreshAfterWrite(Duration.ofMillis(refresh))
+				.expireAfterWrite(Duration.ofMillis(expire))
+				.maximumSize(Long.getLong(SIZE, DEFAULT_SIZE))
+				.recordStats()
+				.removalListener((RemovalNotification<Credentials, Entry> n) -> {
+					if (n.getCause() != RemovalCause.REPLACED)
+						unindex(n.getKey());
+				})
+				.build(CacheLoader.asyncReloading(new CacheLoader<Credentials, Entry>() {
+					@Override
+					public Entry load(Credentials key) throws Exception {
+						throw new IllegalStateException("Entries are loaded with their password");
+					}
+
+					@Override
+					public ListenableFuture<Entry> reload(Credentials key, Entry old) throws Exception {
+						return Futures.immediateFuture(fetch(key, old.password()));
+					}
+				}, reloader));
+
+		var period = Long.getLong(STATS_PERIOD, DEFAULT_STATS_PERIOD);
+		if (period > 0) {
+			this.loggedStats = cache.stats();
+			logStats(period);
+		}
+	}
+
+	/**
+	 * Authenticates the user, returning the cached result when possible.
+	 */
+	Result<User> get(String userId, String password) {
+		if (userId == null)
+			return error(BAD_REQUEST);
+
+		var key = credentials(userId, password);
+		try {
+			var entry = cache.get(key, () -> fetch(key, password));
+			if (entry.expired() || entry.fetched() <= invalidated.getOrDefault(userId, Long.MIN_VALUE)) {
+				cache.asMap().remove(key, entry);
+				entry = cache.get(key, () -> fetch(key, password));
+			}
+			return entry.result();
+		} catch (ExecutionException x) {
+			if (x.getCause() instanceof LoadFailure f)
+				return error(f.error == ErrorCode.TIMEOUT ? BAD_REQUEST : f.error);
+			x.printStackTrace();
+			return error(ErrorCode.INTERNAL_ERROR);
+		} catch (RuntimeException x) {
+			x.printStackTrace();
+			return error(ErrorCode.INTERNAL_ERROR);
+		}
+	}
+
+	void invalidate(String userId, String password) {
+		cache.invalidate(credentials(userId, password));
+	}
+
+	/**
+	 * Drops all the cached results of the given user, regardless of the password.
+	 */
+	void invalidateUser(String userId) {
+		var now = System.nanoTime();
+		invalidated.put(userId, now);
+		var keys = byUser.remove(userId);
+		if (keys != null)
+			cache.invalidateAll(keys);
+
+		// Entries fetched before the expiration period are gone anyway, so older invalidations
+		// are dropped, once in a while...
+		if (invalidated.size() > pruneAt) {
+			invalidated.values().removeIf((t) -> now - t > expireNanos);
+			pruneAt = Math.max(MIN_PRUNE, 2 * invalidated.size());
+		}
+	}
+
+	CacheStats stats() {
+		return cache.stats();
+	}
+
+	/*
+	 * Periodically logs the stats of the cache, when it was used since the last time.
+	 */
+	private void logStats(long period) {
+		var logger = Executors.newSingleThreadScheduledExecutor((r) -> {
+			var t = new Thread(r, "user-cache-stats");
+			t.setDaemon(true);
+			return t;
+		});
+		logger.scheduleWithFixedDelay(() -> {
+			var now = stats();
+			var delta = now.minus(loggedStats);
+			if (delta.requestCount() > 0)
+				Log.info(String.format("User cache: %d requests, hit rate: %.2f, loads: %d (%d failed), evictions: %d, size: %d\n", delta.requestCount(), delta.hitRate(), delta.loadCount(),
+						delta.loadExceptionCount(), delta.evictionCount(), cache.size()));
+			loggedStats = now;
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private Credentials credentials(String userId, String password) {
+		return new Credentials(userId, digest.of(userId, password));
+	}
+
+	private void unindex(Credentials key) {
+		byUser.computeIfPresent(key.userId(), (k, keys) -> {
+			keys.remove(key);
+			return keys.isEmpty() ? null : keys;
+		});
+	}
+
+	private Entry fetch(Credentials key, String password) throws LoadFailure {
+		var fetched = System.nanoTime();
+		var res = UsersClients.get().getUser(key.userId(), password);
+		byUser.computeIfAbsent(key.userId(), (k) -> ConcurrentHashMap.newKeySet()).add(key);
+		switch (res.error()) {
+		case OK:
+			return new Entry(res, password, fetched, Long.MAX_VALUE);
+		case NOT_FOUND:
+		case FORBIDDEN:
+			return new Entry(res, password, fetched, System.currentTimeMillis() + negativeTTL);
+		default:
+			Log.info(String.format("Users.getUser(%s) failed with: %s\n", key.userId(), res.error()));
+			throw new LoadFailure(res.error());
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package tp1.impl.servers.common;
+
+import static tp1.api.service.java.Result.error;
+import static tp1.api.service.java.Result.ok;
+import static tp1.api.service.java.Result.ErrorCode.CONFLICT;
+import static tp1.api.service.java.Result.ErrorCode.FORBIDDEN;
+import static tp1.api.service.java.Result.ErrorCode.NOT_FOUND;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import tp1.api.User;
+import tp1.api.service.java.Result;
+import util.PasswordHash;
+
+/**
+ *
+ * The mutations of the users, as applied to a user store.
+ *
+ * Operations carry everything they need, such as the hashes of new passwords, so
+ * applying them is deterministic: replicas that apply the same operations in the
+ * same order reach the same state, and the same results.
+ *
+ * Updates and deletes carry the password hash the caller checked the password
+ * against, and fail if the password changed in the meantime.
+ *
+ */
+sealed interface UserOp {
+
+	static final byte CREATE = 1, UPDATE = 2, DELETE = 3;
+
+	String userId();
+
+	Result<StoredUser> applyTo(UserStore store);
+
+	void writeTo(DataOutput out) throws IOException;
+
+	record Create(StoredUser user) implements UserOp {
+		public String userId() {
+			return user.userId();
+		}
+
+		public Result<StoredUser> applyTo(UserStore store) {
+			return store.putIfAbsent(user) ? ok(user) : error(CONFLICT);
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(CREATE);
+			user.writeTo(out);
+		}
+	}
+
+	/**
+	 * Replaces the non-null fields of the user.
+	 */
+	record Update(String userId, PasswordHash verified, String fullName, String email, PasswordHash password) implements UserOp {
+		public Result<StoredUser> applyTo(UserStore store) {
+			for (;;) {
+				var user = store.get(userId);
+				if (user == null)
+					return error(NOT_FOUND);
+				if (!user.password().equals(verified))
+					return error(FORBIDDEN);
+
+				var profile = user.withPassword("");
+				profile.updateUser(new User(null, fullName, email, null));
+				var updated = new StoredUser(profile, password != null ? password : user.password());
+				if (store.replace(user, updated))
+					return ok(updated);
+			}
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(UPDATE);
+			out.writeUTF(userId);
+			StoredUser.writeHash(out, verified);
+			writeOptional(out, fullName);
+			writeOptional(out, email);
+			out.writeBoolean(password != null);
+			if (password != null)
+				StoredUser.writeHash(out, password);
+		}
+	}
+
+	record Delete(String userId, PasswordHash verified) implements UserOp {
+		public Result<StoredUser> applyTo(UserStore store) {
+			for (;;) {
+				var user = store.get(userId);
+				if (user == null)
+					return error(NOT_FOUND);
+				if (!user.password().equals(verified))
+					return error(FORBIDDEN);
+				if (store.remove(user))
+					return ok(user);
+			}
+		}
+
+		public void writeTo(DataOutput out) throws IOException {
+			out.writeByte(DELETE);
+			out.writeUTF(userId);
+			StoredUser.writeHash(out, verified);
+		}
+	}
+
+	static UserOp readFrom(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case CREATE:
+			return new Create(StoredUser.readFrom(in));
+		case UPDATE:
+			return new Update(in.readUTF(), StoredUser.readHash(in), readOptional(in), readOptional(in),
+					in.readBoolean() ? StoredUser.readHash(in) : null);
+		case DELETE:
+			return new Delete(in.readUTF(), StoredUser.readHash(in));
+		default:
+			throw new IOException("Unknown user operation: " + type);
+		}
+	}
+
+	private static void writeOptional(DataOutput out, String str) throws IOException {
+		out.writeBoolean(str != null);
+		if (str != null)
+			out.writeUTF(str);
+	}
+
+	private static String readOptional(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -0,0 +1,52 @@
+package tp1.impl.servers.common;
+
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ *
+ * Storage of the users of the Users service.
+ *
+ * Updates are conditional on the version of the user the caller read, so that
+ * concurrent updates of the same user cannot overwrite each other. Versions are
+ * compared by identity.
+ *
+ * The store is chosen with -Dusers.dataDir: the users are logged to that
+ * directory, which must be dedicated to the store, or kept in memory only, if
+ * unset or empty.
+ *
+ */
+interface UserStore {
+
+	static final String DATA_DIR = "users.dataDir";
+	static final String DEFAULT_DATA_DIR = "";
+	static final String SNAPSHOT_EVERY = "users.snapshotEvery";
+	static final long DEFAULT_SNAPSHOT_EVERY = 100_000;
+
+	StoredUser get(String userId);
+
+	/**
+	 * @return true if the user was added, false if a user with the same id exists.
+	 */
+	boolean putIfAbsent(StoredUser user);
+
+	/**
+	 * @return true if the current version of the user was replaced, false if it changed in the meantime.
+	 */
+	boolean replace(StoredUser current, StoredUser updated);
+
+	/**
+	 * @return true if the current version of the user was removed, false if it changed in the meantime.
+	 */
+	boolean remove(StoredUser current);
+
+	Collection<StoredUser> all();
+
+	static UserStore fromProperties() {
+		var dataDir = System.getProperty(DATA_DIR, DEFAULT_DATA_DIR).trim();
+		if (dataDir.isEmpty())
+			return new MemoryUserStore();
+		else
+			return LogUserStore.open(Path.of(dataDir), Long.getLong(SNAPSHOT_EVERY, DEFAULT_SNAPSHOT_EVERY));
+	}
+}
@@ -0,0 +1,124 @@
+package tp1.impl.servers.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import tp1.api.User;
+import util.PasswordHash;
+
+/**
+ *
+ * Bulk import and export of the users kept by a durable user store, to migrate them
+ * between deployments. Must run while the Users server that owns the store is stopped.
+ *
+ * Users are exchanged as JSON, one per line, with their password hash; when importing,
+ * plaintext passwords are accepted as well, and hashed. Users that already exist are
+ * kept.
+ *
+ * Usage: java -Dusers.dataDir=<dir> tp1.impl.servers.common.UserStoreTool (import|export) <file>
+ *
+ */
+public class UserStoreTool {
+
+	static class UserRecord {
+		String userId;
+		String fullName;
+		String email;
+		String password;
+		String passwordHash;
+	}
+
+	public static void main(String[] args) throws IOException {
+		// Without a data dir, the store would be opened in the current directory...
+		var dataDir = System.getProperty(UserStore.DATA_DIR, UserStore.DEFAULT_DATA_DIR).trim();
+		if (dataDir.isEmpty() || args.length != 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+			System.err.println("Usage: java -Dusers.dataDir=<dir> UserStoreTool (import|export) <file>");
+			System.exit(1);
+		}
+
+		var store = LogUserStore.open(Path.of(dataDir), Long.getLong(UserStore.SNAPSHOT_EVERY, UserStore.DEFAULT_SNAPSHOT_EVERY));
+		var file = Path.of(args[1]);
+
+		long t0 = System.currentTimeMillis(), count;
+		if (args[0].equals("import")) {
+			try {
+				count = importUsers(store, file);
+			} catch (IllegalArgumentException x) {
+				System.err.println(x.getMessage());
+				System.exit(1);
+				return;
+			}
+			store.snapshot(store.all());
+		} else
+			count = exportUsers(store, file);
+
+		System.out.printf("%sed %d users in %d ms\n", args[0], count, System.currentTimeMillis() - t0);
+		System.exit(0);
+	}
+
+	/*
+	 * The records are all read and checked first, so that a bad one fails the import before
+	 * any user is stored. Users are then hashed and stored in parallel, so that the cost of
+	 * hashing plaintext passwords is spread over the cores, and the stores share the log flushes.
+	 *
+	 * Throws IllegalArgumentException, with the offending line, if a record is malformed, or
+	 * has neither a password nor a password hash.
+	 */
+	static long importUsers(UserStore store, Path file) throws IOException {
+		var json = new Gson();
+		var records = new ArrayList<UserRecord>();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			int n = 0;
+			for (String line; (line = in.readLine()) != null;) {
+				n++;
+				if (line.isBlank())
+					continue;
+				UserRecord r;
+				try {
+					r = json.fromJson(line, UserRecord.class);
+				} catch (JsonParseException x) {
+					throw new IllegalArgumentException(String.format("Malformed user, at line %d: %s", n, line));
+				}
+				if (r == null || r.userId == null || (r.password == null && r.passwordHash == null))
+					throw new IllegalArgumentException(String.format("User without id or password, at line %d: %s", n, line));
+				records.add(r);
+			}
+		}
+
+		var imported = new AtomicLong();
+		records.parallelStream().forEach(r -> {
+			var profile = new User(r.userId, r.fullName, r.email, "");
+			var hash = r.passwordHash != null ? PasswordHash.decode(r.passwordHash) : PasswordHash.of(r.password);
+			if (store.putIfAbsent(new StoredUser(profile, hash)))
+				imported.incrementAndGet();
+		});
+		return imported.get();
+	}
+
+	static long exportUsers(UserStore store, Path file) throws IOException {
+		var json = new Gson();
+		long exported = 0;
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (var user : store.all()) {
+				var r = new UserRecord();
+				r.userId = user.userId();
+				r.fullName = user.profile().getFullName();
+				r.email = user.profile().getEmail();
+				r.passwordHash = user.password().encode();
+				out.write(json.toJson(r));
+				out.newLine();
+				exported++;
+			}
+		}
+		return exported;
+	}
+}
@@ -0,0 +1,46 @@
+package tp1.impl.servers.common;
+
+import java.time.Duration;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import util.KeyedDigest;
+import util.PasswordHash;
+
+/**
+ * 
+ * Checks passwords against their stored hashes, remembering the credentials recently
+ * verified, so that the costly hash is not recomputed on every request.
+ * 
+ * The remembered credentials are keyed by a keyed digest of the userId and password,
+ * and map to the hash they were verified against; once the password changes, its new
+ * hash no longer matches and the credentials are verified again.
+ *
+ */
+class VerifiedCredentials {
+
+	static final long MAX_SIZE = 10000;
+	static final Duration EXPIRATION = Duration.ofMinutes(10);
+
+	final KeyedDigest digest = new KeyedDigest();
+	final Cache<String, PasswordHash> verified = CacheBuilder.newBuilder()
+			.maximumSize(MAX_SIZE)
+			.expireAfterAccess(EXPIRATION)
+			.build();
+
+	boolean verify(String userId, String password, PasswordHash hash) {
+		if (password == null)
+			return false;
+
+		var key = digest.of(userId, password);
+		if (verified.getIfPresent(key) == hash)
+			return true;
+
+		if (!hash.matches(password))
+			return false;
+
+		verified.put(key, hash);
+		return true;
+	}
+}
@@ -1,33 +1,71 @@
 package tp1.impl.servers.kafka;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
-public class KafkaPublisher {
+/**
+ * 
+ * Publishes records to Kafka.
+ * 
+ * Sends are asynchronous: the producer keeps sending while earlier records are in
+ * flight, and batches the records sent within the linger period, so concurrent
+ * publishers share broker round trips instead of paying one each. Retries keep the
+ * order of the records, since the producer is idempotent.
+ * 
+ * The producer can be injected, eg. to publish to an in-process stand-in of Kafka.
+ *
+ */
+public class KafkaPublisher<V> {
 
-	static public KafkaPublisher createPublisher(String brokers) {
+	/**
+	 * Tuning of the producer, from -Dkafka.lingerMs, -Dkafka.batchSize, -Dkafka.compression and -Dkafka.acks.
+	 *
+	 * @param lingerMs    - how long to wait for more records to fill a batch.
+	 * @param batchSize   - maximum size, in bytes, of the batch sent to a partition.
+	 * @param compression - none, gzip, snappy, lz4 or zstd.
+	 * @param acks        - replicas that must acknowledge a record: 0, 1 or all.
+	 */
+	public record Options(int lingerMs, int batchSize, String compression, String acks) {
+
+		public static Options fromProperties() {
+			return new Options(Integer.getInteger("kafka.lingerMs", 2), Integer.getInteger("kafka.batchSize", 64 * 1024),
+					System.getProperty("kafka.compression", "lz4"), System.getProperty("kafka.acks", "all"));
+		}
+	}
+
+	static public KafkaPublisher<String> createPublisher(String brokers) {
+		return createPublisher(brokers, Options.fromProperties(), new StringSerializer());
+	}
+
+	static public <V> KafkaPublisher<V> createPublisher(String brokers, Options options, Serializer<V> values) {
 		Properties props = new Properties();
 
 		// Localização dos servidores kafka (lista de máquinas + porto)
 		props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers);
 
-		// Classe para serializar as chaves dos eventos (string)
-		props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-
-		// Classe para serializar os valores dos eventos (string)
-		props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+		props.put(ProducerConfig.LINGER_MS_CONFIG, options.lingerMs());
+		props.put(ProducerConfig.BATCH_SIZE_CONFIG, options.batchSize());
+		props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, options.compression());
+		props.put(ProducerConfig.ACKS_CONFIG, options.acks());
+		props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, options.acks().equals("all"));
 
-		return new KafkaPublisher(new KafkaProducer<String, String>(props));
+		// As chaves são strings; os valores usam o serializador dado
+		return new KafkaPublisher<V>(new KafkaProducer<String, V>(props, new StringSerializer(), values));
 	}
 	
-	private final KafkaProducer<String, String> producer;
+	private final Producer<String, V> producer;
 
-	private KafkaPublisher( KafkaProducer<String, String> producer) {
+	public KafkaPublisher( Producer<String, V> producer) {
 		this.producer = producer;
 	}
 
@@ -35,31 +73,51 @@ public class KafkaPublisher {
 		this.producer.close();
 	}
 
-	public long publish(String topic, String key, String value) {
-		try {
-			long offset = producer.send(new ProducerRecord<>(topic, key, value)).get().offset();
-			return offset;
-		} catch (ExecutionException | InterruptedException x) {
-			x.printStackTrace();
-		}
-		return -1;
+	/**
+	 * Sends a record, without waiting for it to be acknowledged.
+	 * 
+	 * @return a future completed with the offset of the record, once it is acknowledged.
+	 */
+	public CompletableFuture<Long> publishAsync(String topic, String key, V value) {
+		var res = new CompletableFuture<Long>();
+		producer.send(new ProducerRecord<>(topic, key, value), (metadata, x) -> {
+			if (x == null)
+				res.complete(metadata.offset());
+			else
+				res.completeExceptionally(x);
+		});
+		return res;
+	}
+
+	/**
+	 * Sends a group of records and pushes them to the brokers right away, without waiting
+	 * for the linger period.
+	 * 
+	 * @return a future completed with the offsets of the records, in order, once all are acknowledged.
+	 */
+	public CompletableFuture<List<Long>> publishAll(String topic, String key, List<V> values) {
+		var sent = new ArrayList<CompletableFuture<Long>>(values.size());
+		for (var value : values)
+			sent.add(publishAsync(topic, key, value));
+		producer.flush();
+		return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0]))
+				.thenApply((v) -> sent.stream().map(CompletableFuture::join).toList());
+	}
+
+	public long publish(String topic, String key, V value) {
+		return offsetOf(publishAsync(topic, key, value));
 	}
 	
-	public long publish(String topic, String value) {
+	public long publish(String topic, V value) {
+		return publish(topic, null, value);
+	}
+
+	private static long offsetOf(CompletableFuture<Long> sent) {
 		try {
-			long offset = producer.send(new ProducerRecord<>(topic, value)).get().offset();
-			return offset;
-		} catch (ExecutionException | InterruptedException x) {
-			x.printStackTrace();
+			return sent.join();
+		} catch (CompletionException x) {
+			x.getCause().printStackTrace();
 		}
 		return -1;
-	}
-	
-	
-	public static void main(String[] args) throws Exception {
-
-		
-		
-		
 	}
 }
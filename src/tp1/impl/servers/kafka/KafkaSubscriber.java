@@ -1,15 +1,56 @@
 package tp1.impl.servers.kafka;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 
-public class KafkaSubscriber {
-	static public KafkaSubscriber createSubscriber(String brokers, List<String> topics, String mode) {
+/**
+ *
+ * Consumes records from Kafka, and hands them to a processor.
+ *
+ * One thread polls Kafka, and dispatches the records to a number of lanes, each
+ * processed by its own thread; records with the same key always go to the same
+ * lane, so they are processed in order, while records with different keys may be
+ * processed in parallel. With a single lane, all records are processed in order.
+ *
+ * Lanes have bounded queues (-Dkafka.laneCapacity): when a lane is full, the
+ * partitions are paused until it drains, so slow processing holds back polling
+ * instead of buffering records without limit.
+ *
+ * Offsets are committed by hand, up to the lowest offset of each partition not yet
+ * processed, so a record is only committed after it, and all before it, are processed.
+ *
+ */
+public class KafkaSubscriber<V> {
+	private static Logger Log = Logger.getLogger(KafkaSubscriber.class.getName());
+
+	static public KafkaSubscriber<String> createSubscriber(String brokers, List<String> topics, String mode) {
+		return createSubscriber(brokers, topics, mode, new StringDeserializer());
+	}
+
+	static public <V> KafkaSubscriber<V> createSubscriber(String brokers, List<String> topics, String mode, Deserializer<V> values) {
 
 		Properties props = new Properties();
 
@@ -22,36 +63,217 @@ public class KafkaSubscriber {
 		// Configura o grupo de consumidores (ver documentação em kafka.apache.org)
 		props.put(ConsumerConfig.GROUP_ID_CONFIG, "grp" + System.nanoTime());
 
-		// Classe para serializar as chaves dos eventos (string)
-		props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+		// Os offsets são confirmados depois de processados os eventos
+		props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
 
-		// Classe para serializar os valores dos eventos (string)
-		props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-
-		// Cria um consumidor (assinante/subscriber)
-		return new KafkaSubscriber(new KafkaConsumer<String, String>(props), topics);
+		// Cria um consumidor (assinante/subscriber); as chaves são strings, os valores usam o deserializador dado
+		return new KafkaSubscriber<V>(new KafkaConsumer<String, V>(props, new StringDeserializer(), values), topics);
 	}
 
+	static final String LANE_CAPACITY = "kafka.laneCapacity";
+	static final int DEFAULT_LANE_CAPACITY = 1024;
+
 	private static final long POLL_TIMEOUT = 1L;
+	private static final long PAUSED_POLL_TIMEOUT = 100;
+	private static final long METRICS_PERIOD = 5000;
 
-	final KafkaConsumer<String, String> consumer;
+	/**
+	 * @param processed - records processed so far.
+	 * @param queued    - records waiting in the lanes.
+	 * @param lag       - records of the assigned partitions not yet processed, as of the last measurement.
+	 */
+	public record Metrics(long processed, long queued, long lag) {
+	}
+
+	/*
+	 * Offsets of a partition handed to the lanes and not yet processed.
+	 */
+	static class Progress {
+		final NavigableSet<Long> pending = new ConcurrentSkipListSet<>();
+		long next = -1;
+		long committed = -1;
+
+		long committable() {
+			var first = pending.ceiling(Long.MIN_VALUE);
+			return first != null ? first : next;
+		}
+	}
 
-	public KafkaSubscriber(KafkaConsumer<String, String> consumer, List<String> topics) {
+	final KafkaConsumer<String, V> consumer;
+	private final Map<TopicPartition, Progress> progress = new ConcurrentHashMap<>();
+	private final Deque<ConsumerRecord<String, V>> backlog = new ArrayDeque<>();
+	private final AtomicLong processed = new AtomicLong();
+	private volatile boolean running = true;
+	private volatile long lag;
+	private List<Lane> lanes = List.of();
+	private boolean paused;
+	private long lastMetrics;
+
+	public KafkaSubscriber(KafkaConsumer<String, V> consumer, List<String> topics) {
 		this.consumer = consumer;
 		this.consumer.subscribe(topics);
 	}
 
-	public void start(boolean block, RecordProcessor processor) {
+	/**
+	 * Processes all records in order.
+	 */
+	public void start(boolean block, RecordProcessor<V> processor) {
+		start(block, 1, processor);
+	}
+
+	/**
+	 * Processes records in the given number of lanes, in order for each key.
+	 */
+	public void start(boolean block, int lanes, RecordProcessor<V> processor) {
+		var capacity = Integer.getInteger(LANE_CAPACITY, DEFAULT_LANE_CAPACITY);
+		this.lanes = new ArrayList<>();
+		for (int i = 0; i < lanes; i++) {
+			var lane = new Lane(i, capacity, processor);
+			this.lanes.add(lane);
+			lane.start();
+		}
 		if( block )
-			consume( processor );
+			consume();
 		else
-			new Thread( () -> consume( processor)).start();
+			new Thread( () -> consume()).start();
 	}
 
-	private void consume(RecordProcessor processor) {
-		for (;;)
-			consumer.poll(Duration.ofSeconds(POLL_TIMEOUT)).forEach(r -> {
-				processor.onReceive(r);
+	/**
+	 * Stops polling; the records already queued are processed and committed.
+	 */
+	public void stop() {
+		running = false;
+		consumer.wakeup();
+	}
+
+	public Metrics metrics() {
+		long queued = 0;
+		for (var lane : lanes)
+			queued += lane.queue.size();
+		return new Metrics(processed.get(), queued, lag);
+	}
+
+	private void consume() {
+		try {
+			while (running) {
+				var timeout = backlog.isEmpty() ? Duration.ofSeconds(POLL_TIMEOUT) : Duration.ofMillis(PAUSED_POLL_TIMEOUT);
+				consumer.poll(timeout).forEach(backlog::add);
+				dispatch();
+				commit(false);
+				measure();
+			}
+		} catch (WakeupException x) {
+			// stopping
+		} finally {
+			for (var lane : lanes)
+				try {
+					lane.join();
+				} catch (InterruptedException x) {
+				}
+			commit(true);
+			consumer.close();
+		}
+	}
+
+	/*
+	 * Hands the polled records to their lanes, pausing the partitions if a lane is full.
+	 */
+	private void dispatch() {
+		for (ConsumerRecord<String, V> r; (r = backlog.peek()) != null; backlog.poll()) {
+			var p = progress.computeIfAbsent(new TopicPartition(r.topic(), r.partition()), (k) -> new Progress());
+			p.pending.add(r.offset());
+			if (!laneOf(r).queue.offer(r)) {
+				p.pending.remove(r.offset());
+				if (!paused) {
+					consumer.pause(consumer.assignment());
+					paused = true;
+				}
+				return;
+			}
+			p.next = r.offset() + 1;
+		}
+		if (paused) {
+			consumer.resume(consumer.paused());
+			paused = false;
+		}
+	}
+
+	private Lane laneOf(ConsumerRecord<String, V> r) {
+		int hash = r.key() != null ? r.key().hashCode() : r.partition();
+		return lanes.get(Math.floorMod(hash, lanes.size()));
+	}
+
+	private void commit(boolean sync) {
+		var offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+		progress.forEach((tp, p) -> {
+			var offset = p.committable();
+			if (offset > p.committed) {
+				offsets.put(tp, new OffsetAndMetadata(offset));
+				p.committed = offset;
+			}
+		});
+		if (offsets.isEmpty())
+			return;
+
+		if (sync)
+			consumer.commitSync(offsets);
+		else
+			consumer.commitAsync(offsets, (o, x) -> {
+				if (x != null)
+					Log.warning(String.format("Failed to commit offsets %s: %s\n", o, x));
 			});
 	}
+
+	/*
+	 * Measures the lag of the assigned partitions, periodically.
+	 */
+	private void measure() {
+		var now = System.currentTimeMillis();
+		if (now - lastMetrics < METRICS_PERIOD)
+			return;
+		lastMetrics = now;
+
+		long total = 0;
+		for (var e : consumer.endOffsets(consumer.assignment()).entrySet()) {
+			var p = progress.get(e.getKey());
+			var done = p != null && p.next >= 0 ? p.committable() : consumer.position(e.getKey());
+			total += Math.max(0, e.getValue() - done);
+		}
+		lag = total;
+		Log.fine(String.format("Subscriber metrics: %s\n", metrics()));
+	}
+
+	private class Lane extends Thread {
+		final BlockingQueue<ConsumerRecord<String, V>> queue;
+		final RecordProcessor<V> processor;
+
+		Lane(int i, int capacity, RecordProcessor<V> processor) {
+			super("kafka-lane-" + i);
+			this.queue = new ArrayBlockingQueue<>(capacity);
+			this.processor = processor;
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (running || !queue.isEmpty())
+				try {
+					var r = queue.poll(POLL_TIMEOUT, TimeUnit.SECONDS);
+					if (r != null)
+						process(r);
+				} catch (InterruptedException x) {
+				}
+		}
+
+		private void process(ConsumerRecord<String, V> r) {
+			try {
+				processor.onReceive(r);
+			} catch (RuntimeException x) {
+				Log.severe(String.format("Failed to process record %s/%d: %s\n", r.topic(), r.offset(), x));
+			} finally {
+				progress.get(new TopicPartition(r.topic(), r.partition())).pending.remove(r.offset());
+				processed.incrementAndGet();
+			}
+		}
+	}
 }
@@ -0,0 +1,75 @@
+package tp1.impl.servers.kafka;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * 
+ * Publishes user events to a Kafka topic, keyed by userId, and delivers the events
+ * published from now on to the local listeners.
+ * 
+ * Events are delivered in parallel lanes (-Dkafka.events.lanes), in order for each user.
+ *
+ */
+public class KafkaUserEvents implements UserEvents {
+	private static Logger Log = Logger.getLogger(KafkaUserEvents.class.getName());
+
+	private static final String FROM_NOW = "latest";
+
+	static final String LANES = "kafka.events.lanes";
+	static final int DEFAULT_LANES = 4;
+
+	private static KafkaUserEvents instance;
+
+	synchronized public static KafkaUserEvents getInstance(String brokers) {
+		if (instance == null)
+			instance = new KafkaUserEvents(brokers);
+		return instance;
+	}
+
+	private final String brokers;
+	private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+	private KafkaPublisher<String> publisher;
+	private KafkaSubscriber<String> subscriber;
+
+	private KafkaUserEvents(String brokers) {
+		this.brokers = brokers;
+	}
+
+	/**
+	 * Sends the event without waiting for Kafka to acknowledge it, so that publishing does
+	 * not hold back the operation that caused it.
+	 */
+	@Override
+	public void publish(String userId, String event) {
+		publisher().publishAsync(TOPIC, userId, event).whenComplete((offset, x) -> {
+			if (x != null)
+				Log.warning(String.format("Failed to publish user event: %s %s: %s\n", userId, event, x));
+		});
+	}
+
+	private synchronized KafkaPublisher<String> publisher() {
+		if (publisher == null)
+			publisher = KafkaPublisher.createPublisher(brokers);
+		return publisher;
+	}
+
+	@Override
+	public synchronized void subscribe(Consumer<String> listener) {
+		listeners.add(listener);
+		if (subscriber == null) {
+			subscriber = KafkaSubscriber.createSubscriber(brokers, List.of(TOPIC), FROM_NOW);
+			subscriber.start(false, Integer.getInteger(LANES, DEFAULT_LANES), (r) -> {
+				Log.fine(String.format("User event: %s %s\n", r.key(), r.value()));
+				listeners.forEach(l -> l.accept(r.key()));
+			});
+		}
+	}
+
+	@Override
+	public boolean isDistributed() {
+		return true;
+	}
+}
@@ -0,0 +1,37 @@
+package tp1.impl.servers.kafka;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 
+ * Delivers user events to the listeners in the same process.
+ *
+ */
+public class LocalUserEvents implements UserEvents {
+	private static LocalUserEvents instance;
+
+	synchronized public static LocalUserEvents getInstance() {
+		if (instance == null)
+			instance = new LocalUserEvents();
+		return instance;
+	}
+
+	private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void publish(String userId, String event) {
+		listeners.forEach(l -> l.accept(userId));
+	}
+
+	@Override
+	public void subscribe(Consumer<String> listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public boolean isDistributed() {
+		return false;
+	}
+}
@@ -0,0 +1,81 @@
+package tp1.impl.servers.kafka;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import util.CompactDataInput;
+import util.CompactDataOutput;
+
+/**
+ *
+ * Serializes operation records to and from Kafka, in the compact binary format of
+ * CompactDataOutput, given the DataOutput/DataInput codec of the operations.
+ *
+ * Each record starts with the version of the format, so that the format can evolve
+ * while topics hold records written with older versions. Null records, eg. barriers,
+ * are passed through.
+ *
+ */
+public class OpCodec<T> implements Serializer<T>, Deserializer<T> {
+
+	static final byte VERSION = 1;
+
+	public interface Writer<T> {
+		void write(DataOutput out, T op) throws IOException;
+	}
+
+	public interface Reader<T> {
+		T read(DataInput in) throws IOException;
+	}
+
+	private final Writer<T> writer;
+	private final Reader<T> reader;
+
+	public OpCodec(Writer<T> writer, Reader<T> reader) {
+		this.writer = writer;
+		this.reader = reader;
+	}
+
+	@Override
+	public byte[] serialize(String topic, T op) {
+		if (op == null)
+			return null;
+		try {
+			var out = new CompactDataOutput();
+			out.writeByte(VERSION);
+			writer.write(out, op);
+			return out.toByteArray();
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+	}
+
+	@Override
+	public T deserialize(String topic, byte[] data) {
+		if (data == null)
+			return null;
+		try {
+			var in = new CompactDataInput(data);
+			byte version = in.readByte();
+			if (version != VERSION)
+				throw new IOException(String.format("Unsupported record version %d in %s", version, topic));
+			return reader.read(in);
+		} catch (IOException x) {
+			throw new UncheckedIOException(x);
+		}
+	}
+
+	@Override
+	public void configure(Map<String, ?> configs, boolean isKey) {
+	}
+
+	@Override
+	public void close() {
+	}
+}
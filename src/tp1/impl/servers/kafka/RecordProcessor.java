@@ -2,6 +2,6 @@ package tp1.impl.servers.kafka;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
-public interface RecordProcessor {
-	void onReceive(ConsumerRecord<String, String> r);
+public interface RecordProcessor<V> {
+	void onReceive(ConsumerRecord<String, V> r);
 }
@@ -0,0 +1,170 @@
+package tp1.impl.servers.kafka;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+/**
+ *
+ * Replicates a deterministic state machine over a Kafka topic.
+ *
+ * Every replica publishes the operations it receives to the topic, and applies all
+ * the operations of the topic, from the beginning, in the order Kafka assigned to
+ * them; Kafka thus acts as the primary that orders the writes. The offset of the
+ * last operation applied is the version of the replica's state.
+ *
+ * The topic must have a single partition, and keep its records forever, since it is
+ * the only durable copy of the state.
+ *
+ * Records are keyed by the id of the replica that published them, so that each
+ * replica only keeps the results of its own operations, for the threads waiting for
+ * them. Operations are written with the given codec; null records are barriers.
+ *
+ * A replica that cannot read an operation cannot skip it without diverging from the
+ * others, so it halts: it stops applying operations, and refuses requests from then on.
+ *
+ */
+public class ReplicatedLog<O, T> {
+	private static Logger Log = Logger.getLogger(ReplicatedLog.class.getName());
+
+	private static final String FROM_BEGINNING = "earliest";
+
+	static final String SUBMIT_TIMEOUT = "kafka.submitTimeout";
+	static final long DEFAULT_SUBMIT_TIMEOUT = 10000;
+
+	static final long HALT_CHECK_PERIOD = 1000;
+
+	final long submitTimeout = Long.getLong(SUBMIT_TIMEOUT, DEFAULT_SUBMIT_TIMEOUT);
+
+	private final String topic;
+	private final String replicaId = UUID.randomUUID().toString();
+	private final Function<O, T> stateMachine;
+	private final OpCodec<O> codec;
+	private final KafkaPublisher<O> publisher;
+	private final KafkaSubscriber<byte[]> subscriber;
+	private final SyncPoint<T> sync = new SyncPoint<>();
+	private volatile String failure;
+
+	/**
+	 * @param stateMachine - applies an operation, returning its result.
+	 */
+	public ReplicatedLog(String brokers, String topic, OpCodec<O> codec, Function<O, T> stateMachine) {
+		this.topic = topic;
+		this.stateMachine = stateMachine;
+		this.codec = codec;
+		this.publisher = KafkaPublisher.createPublisher(brokers, KafkaPublisher.Options.fromProperties(), codec);
+		this.subscriber = KafkaSubscriber.createSubscriber(brokers, List.of(topic), FROM_BEGINNING, new ByteArrayDeserializer());
+	}
+
+	/**
+	 * Starts applying the operations of the topic, and waits until those published so far are applied.
+	 *
+	 * @throws IllegalStateException if the replica halted before catching up.
+	 */
+	public void start() {
+		subscriber.start(false, (r) -> {
+			if (halted())
+				return;
+			O op;
+			try {
+				op = codec.deserialize(topic, r.value());
+			} catch (RuntimeException x) {
+				halt(r.offset(), x);
+				return;
+			}
+			T result = null;
+			if (op != null)
+				try {
+					result = stateMachine.apply(op);
+				} catch (RuntimeException x) {
+					Log.severe(String.format("Failed to apply operation %d of %s: %s\n", r.offset(), topic, x));
+				}
+			if (replicaId.equals(r.key()))
+				sync.setResult(r.offset(), result);
+			else
+				sync.setVersion(r.offset());
+		});
+		long t0 = System.currentTimeMillis();
+		var version = publish(null);
+		while (!sync.awaitVersion(version, HALT_CHECK_PERIOD))
+			if (halted())
+				throw new IllegalStateException("Replica halted: " + failure);
+		sync.waitForResult(version);
+		Log.info(String.format("Replica of %s caught up to version %d in %d ms\n", topic, version, System.currentTimeMillis() - t0));
+	}
+
+	/**
+	 * The outcome of an operation submitted: the result, or null if the operation was not applied
+	 * in time; an operation published may still be applied later, one that was not never will.
+	 */
+	public record Submission<T>(boolean published, T result) {
+	}
+
+	/**
+	 * Submits an operation and waits for its result.
+	 *
+	 * Operations submitted concurrently are sent to Kafka in the same batches.
+	 *
+	 * @return the result, or null if the operation could not be published, or was not applied in time.
+	 */
+	public T submit(O op) {
+		return trySubmit(op).result();
+	}
+
+	/**
+	 * Like submit, telling apart the operations that were not published from those not applied in time.
+	 *
+	 * The wait is bounded (-Dkafka.submitTimeout, in ms), so that requests do not hang if the
+	 * replica stops consuming the topic.
+	 */
+	public Submission<T> trySubmit(O op) {
+		if (halted())
+			return new Submission<>(false, null);
+
+		var version = publish(op);
+		if (version < 0)
+			return new Submission<>(false, null);
+
+		var res = sync.awaitResult(version, submitTimeout);
+		if (res == null && sync.getVersion() < version)
+			Log.warning(String.format("Operation %d of %s not applied after %d ms, at version %d\n", version, topic, submitTimeout, sync.getVersion()));
+		return new Submission<>(true, res);
+	}
+
+	/**
+	 * Waits, for up to timeout ms, until the operations up to the given version are applied.
+	 *
+	 * @return true if the version was reached, false if the wait timed out.
+	 */
+	public boolean awaitVersion(long version, long timeout) {
+		return sync.awaitVersion(version, timeout);
+	}
+
+	/**
+	 * The offset of the last operation applied by this replica.
+	 */
+	public long version() {
+		return sync.getVersion();
+	}
+
+	/**
+	 * True if the replica stopped applying operations, after one it could not read; its state
+	 * is then stale for good, and it must not serve requests.
+	 */
+	public boolean halted() {
+		return failure != null;
+	}
+
+	private void halt(long offset, RuntimeException x) {
+		failure = String.format("cannot read operation %d of %s: %s", offset, topic, x);
+		Log.severe(String.format("Replica halted, %s\n", failure));
+		subscriber.stop();
+	}
+
+	private long publish(O op) {
+		return publisher.publish(topic, replicaId, op);
+	}
+}
@@ -1,7 +1,9 @@
 package tp1.impl.servers.kafka;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class SyncPoint<T> {
 	private static SyncPoint<?> instance;
@@ -15,6 +17,7 @@ public class SyncPoint<T> {
 
 	private long version = -1L;
 	private Map<Long, T> results;
+	private Set<Long> abandoned = new HashSet<>();
 
 	public SyncPoint() {
 		results = new HashMap<>();
@@ -32,6 +35,26 @@ public class SyncPoint<T> {
 		}
 	}
 
+	/**
+	 * Waits for version to be at least equals to n, for up to timeout ms.
+	 * 
+	 * @return true if the version was reached, false if the wait timed out.
+	 */
+	public synchronized boolean awaitVersion(long n, long timeout) {
+		var deadline = System.currentTimeMillis() + timeout;
+		for (long now; version < n && (now = System.currentTimeMillis()) < deadline;) {
+			try {
+				this.wait(deadline - now);
+			} catch (InterruptedException e) {
+			}
+		}
+		return version >= n;
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
 	/**
 	 * Assuming that results are added sequentially, returns null if the result is
 	 * not available.
@@ -41,11 +64,26 @@ public class SyncPoint<T> {
 		return results.remove( n );
 	}
 
+	/**
+	 * Like waitForResult, for up to timeout ms; the result of a version no longer awaited is
+	 * discarded when it arrives.
+	 * 
+	 * @return the result, or null if the wait timed out.
+	 */
+	public synchronized T awaitResult(long n, long timeout) {
+		if (!awaitVersion(n, timeout)) {
+			abandoned.add(n);
+			return null;
+		}
+		return results.remove(n);
+	}
+
 	/**
 	 * Updates the version and stores the associated result
 	 */
 	public synchronized void setResult(long n, T result) {
-		results.put(n, result);
+		if (!abandoned.remove(n))
+			results.put(n, result);
 		version = n;
 		this.notifyAll();
 	}
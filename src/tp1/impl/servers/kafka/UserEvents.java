@@ -0,0 +1,42 @@
+package tp1.impl.servers.kafka;
+
+import java.util.function.Consumer;
+
+/**
+ * 
+ * Notifications of changes to users, published by the Users service, so that other
+ * services can drop what they cached about those users.
+ * 
+ * Events travel through Kafka when -Dkafka.brokers is set; otherwise, they are only
+ * delivered within the same process.
+ *
+ */
+public interface UserEvents {
+
+	static final String BROKERS = "kafka.brokers";
+	static final String TOPIC = "user_events";
+
+	static final String UPDATED = "updated";
+	static final String DELETED = "deleted";
+
+	/**
+	 * Announces that the user changed (eg. its password) or was deleted.
+	 */
+	void publish(String userId, String event);
+
+	/**
+	 * Registers a listener, called with the userId of each user changed from now on.
+	 */
+	void subscribe(Consumer<String> listener);
+
+	/**
+	 * Tells if events reach other processes, in which case they can be relied upon
+	 * instead of short expiration times.
+	 */
+	boolean isDistributed();
+
+	static UserEvents fromProperties() {
+		var brokers = System.getProperty(BROKERS);
+		return brokers == null || brokers.isBlank() ? LocalUserEvents.getInstance() : KafkaUserEvents.getInstance(brokers);
+	}
+}
@@ -8,6 +8,7 @@ import org.glassfish.jersey.server.ResourceConfig;
 
 import tp1.impl.discovery.Discovery;
 import tp1.impl.servers.common.AbstractServer;
+import tp1.impl.servers.rest.util.LatencyFilter;
 import tp1.tls.InsecureHostnameVerifier;
 import util.IP;
 
@@ -30,6 +31,7 @@ public abstract class AbstractRestServer extends AbstractServer {
 		ResourceConfig config = new ResourceConfig();
 
 		registerResources(config);
+		config.register(new LatencyFilter(requests));
 
 		HttpsURLConnection.setDefaultHostnameVerifier(new InsecureHostnameVerifier());
 
@@ -43,7 +45,7 @@ public abstract class AbstractRestServer extends AbstractServer {
 
 		Log.info(String.format("%s Server ready @ %s\n", service, serverURI));
 
-		Discovery.getInstance().announce(service, serverURI);
+		Discovery.getInstance().announce(service, serverURI, this::load);
 	}
 	
 	abstract void registerResources( ResourceConfig config );
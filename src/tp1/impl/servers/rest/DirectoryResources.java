@@ -9,10 +9,15 @@ import java.util.*;
 import java.util.logging.Logger;
 
 import jakarta.inject.Singleton;
+import jakarta.ws.rs.core.GenericEntity;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 import tp1.api.FileInfo;
 import tp1.api.service.java.Directory;
+import tp1.api.service.java.Result;
 import tp1.api.service.java.Result.ErrorCode;
 import tp1.api.service.rest.RestDirectory;
+import tp1.impl.clients.common.HedgedRead;
 import tp1.impl.servers.common.JavaDirectory;
 import util.Token;
 //import tp1.impl.servers.kafka.KafkaSubscriber;
@@ -25,13 +30,18 @@ public class DirectoryResources extends RestResource implements RestDirectory {
 
 	static final String KAFKA_BROKERS = "kafka:9092";
 	static final String TOPIC = "delete_user";
+	static final int STREAM_PAGE_SIZE = 1000;
 	//private static final String FROM_BEGINNING = "earliest";
 
 
 	final Directory impl;
 
 	public DirectoryResources() {
-		impl = new JavaDirectory();
+		this(new JavaDirectory());
+	}
+
+	public DirectoryResources(Directory impl) {
+		this.impl = impl;
 	}
 
 	public FileInfo writeFile(String filename, byte[] data, String userId, String password) {
@@ -72,36 +82,43 @@ public class DirectoryResources extends RestResource implements RestDirectory {
 
 		var res = impl.getFile(filename, userId, accUserId, password);
 		if (res.error() == ErrorCode.REDIRECT) {
-			List<String> restl = new ArrayList<>();
-			List<String> soapl = new ArrayList<>();
+			// SOAP replicas cannot be redirected to, so their contents are proxied, hedging across them...
 			Queue<String> uris = res.errorValue();
-			while(!uris.isEmpty()) {
-				String loc = uris.remove();
-				if (loc.contains(SOAP)) {
-					soapl.add(loc);
-					String fileId = JavaDirectory.fileId(filename, userId);
-					res = FilesClients.get(loc).getFile(fileId, Token.createToken(fileId, System.currentTimeMillis()));
-					if(res.isOK()) break;
-				} else restl.add(loc);
+			List<URI> soapl = new ArrayList<>();
+			Queue<String> restl = new ArrayDeque<>();
+			for (var loc : uris)
+				if (loc.contains(SOAP))
+					soapl.add(JavaDirectory.serverFromURL(loc));
+				else
+					restl.add(loc);
+
+			if (!soapl.isEmpty()) {
+				String fileId = JavaDirectory.fileIdFromURL(uris.peek());
+				String token = Token.createToken(fileId, System.currentTimeMillis());
+				var proxied = HedgedRead.read(soapl, (u) -> FilesClients.get(u).getFile(fileId, token));
+				res = proxied.isOK() || restl.isEmpty() ? proxied : Result.redirect(restl);
 			}
-			uris.addAll(restl);
-			uris.addAll(soapl);
 		}
 
 		return super.resultOrThrow(res);
 	}
 
 	@Override
-	public List<FileInfo> lsFile(String userId, String password) {
-		long T0 = System.currentTimeMillis();
-		try {
-
-			Log.info(String.format("REST lsFile: userId = %s, password = %s\n", userId, password));
-
-			return super.resultOrThrow(impl.lsFile(userId, password));
-		} finally {
-			System.err.println("TOOK:" + (System.currentTimeMillis() - T0));
+	public Response lsFile(String userId, String password, int limit, String cursor) {
+		Log.info(String.format("REST lsFile: userId = %s, password = %s, limit = %d, cursor = %s\n", userId, password, limit, cursor));
+
+		if (limit > 0) {
+			var page = super.resultOrThrow(impl.lsFilePage(userId, password, limit, cursor));
+			var res = Response.ok(page.getFiles(), MediaType.APPLICATION_JSON);
+			if (page.getNext() != null)
+				res.header(NEXT_CURSOR, page.getNext());
+			return res.build();
 		}
+
+		// Without a limit, all the files are streamed, as Jackson writes the iterator lazily...
+		var infos = super.resultOrThrow(impl.lsFileIterator(userId, password, STREAM_PAGE_SIZE, cursor));
+		return Response.ok(new GenericEntity<Iterator<FileInfo>>(infos) {
+		}, MediaType.APPLICATION_JSON).build();
 	}
 
 	@Override
@@ -2,10 +2,12 @@ package tp1.impl.servers.rest;
 
 import jakarta.inject.Singleton;
 
+import jakarta.ws.rs.core.Response;
 import tp1.api.service.java.Files;
 import tp1.api.service.rest.RestFiles;
 import tp1.impl.servers.common.JavaDropboxFiles;
 
+import java.io.InputStream;
 import java.util.logging.Logger;
 
 @Singleton
@@ -20,10 +22,10 @@ public class DropboxFilesResources extends RestResource implements RestFiles {
 
 
     @Override
-    public void writeFile(String fileId, byte[] data, String token) {
-        Log.info(String.format("REST writeFile: fileId = %s, data.length = %d, token = %s \n", fileId, data.length, token));
+    public void writeFile(String fileId, InputStream data, String token) {
+        Log.info(String.format("REST writeFile: fileId = %s, token = %s \n", fileId, token));
 
-        super.resultOrThrow( impl.writeFile(fileId, data, token));
+        super.resultOrThrow( impl.writeFileStream(fileId, data, token));
     }
 
     @Override
@@ -34,10 +36,11 @@ public class DropboxFilesResources extends RestResource implements RestFiles {
     }
 
     @Override
-    public byte[] getFile(String fileId, String token) {
+    public Response getFile(String fileId, String range, String token) {
         Log.info(String.format("REST getFile: fileId = %s,  token = %s \n", fileId, token));
 
-        return resultOrThrow( impl.getFile(fileId, token));
+        // Range requests are ignored here; serving the whole file is a valid reply...
+        return Response.ok( streamOrThrow( impl.getFileStream(fileId, token))).build();
     }
 
     @Override
@@ -1,27 +1,36 @@
 package tp1.impl.servers.rest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
 
 import jakarta.inject.Singleton;
-import tp1.api.service.java.Files;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 import tp1.api.service.rest.RestFiles;
 import tp1.impl.servers.common.JavaFiles;
+import tp1.impl.servers.rest.util.ByteRange;
+import util.IO;
 
 @Singleton
 public class FilesResources extends RestResource implements RestFiles {
 	private static Logger Log = Logger.getLogger(FilesResources.class.getName());
 
-	final Files impl;
+	final JavaFiles impl;
 
 	public FilesResources() {
 		impl = new JavaFiles();
 	}
 
 	@Override
-	public void writeFile(String fileId, byte[] data, String token) {
-		Log.info(String.format("REST writeFile: fileId = %s, data.length = %d, token = %s \n", fileId, data.length, token));
+	public void writeFile(String fileId, InputStream data, String token) {
+		Log.info(String.format("REST writeFile: fileId = %s, token = %s \n", fileId, token));
 
-		super.resultOrThrow( impl.writeFile(fileId, data, token));
+		super.resultOrThrow( impl.writeFileStream(fileId, data, token));
 	}
 
 	@Override
@@ -31,11 +40,40 @@ public class FilesResources extends RestResource implements RestFiles {
 		super.resultOrThrow( impl.deleteFile(fileId, token));
 	}
 
+	/**
+	 * Serves the file straight from a FileChannel, honoring single byte range requests.
+	 */
 	@Override
-	public byte[] getFile(String fileId, String token) {
-		Log.info(String.format("REST getFile: fileId = %s,  token = %s \n", fileId, token));
+	public Response getFile(String fileId, String range, String token) {
+		Log.info(String.format("REST getFile: fileId = %s, range = %s, token = %s \n", fileId, range, token));
 
-		return resultOrThrow( impl.getFile(fileId, token));
+		var channel = resultOrThrow( impl.getFileChannel(fileId, token));
+		try {
+			long size = channel.size();
+			var br = ByteRange.parse(range, size);
+			if (br == null)
+				return Response.ok(transfer(channel, 0, size))
+						.header(HttpHeaders.CONTENT_LENGTH, size)
+						.header(ACCEPT_RANGES, "bytes")
+						.build();
+
+			if (!br.isSatisfiable()) {
+				channel.close();
+				return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+						.header(CONTENT_RANGE, br.contentRange())
+						.build();
+			}
+			return Response.status(Status.PARTIAL_CONTENT)
+					.entity(transfer(channel, br.start(), br.length()))
+					.header(HttpHeaders.CONTENT_LENGTH, br.length())
+					.header(CONTENT_RANGE, br.contentRange())
+					.header(ACCEPT_RANGES, "bytes")
+					.build();
+		} catch (IOException x) {
+			x.printStackTrace();
+			closeQuietly(channel);
+			throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
+		}
 	}
 
 	@Override
@@ -44,4 +82,19 @@ public class FilesResources extends RestResource implements RestFiles {
 
 		super.resultOrThrow( impl.deleteUserFiles(userId, token));
 	}
+
+	private static StreamingOutput transfer(FileChannel channel, long position, long count) {
+		return out -> {
+			try (channel) {
+				IO.transfer(channel, position, count, out);
+			}
+		};
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException x) {
+		}
+	}
 }
@@ -6,6 +6,8 @@ import java.util.logging.Logger;
 import org.glassfish.jersey.server.ResourceConfig;
 
 import tp1.api.service.java.Files;
+import tp1.impl.discovery.ServerLoad;
+import tp1.impl.servers.common.JavaFiles;
 import tp1.impl.servers.rest.util.GenericExceptionMapper;
 import util.Debug;
 import util.Token;
@@ -19,6 +21,11 @@ public class FilesRestServer extends AbstractRestServer {
 	FilesRestServer() {
 		super(Log, Files.SERVICE_NAME, PORT);
 	}
+
+	@Override
+	protected ServerLoad load() {
+		return super.load().withFiles(JavaFiles.storedFiles());
+	}
 	
 	@Override
 	void registerResources(ResourceConfig config) {
@@ -0,0 +1,47 @@
+package tp1.impl.servers.rest;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.glassfish.jersey.server.ResourceConfig;
+
+import tp1.api.service.java.Users;
+import tp1.api.service.rest.RestUsers;
+import tp1.impl.servers.common.ReplicatedUsers;
+import tp1.impl.servers.kafka.UserEvents;
+import tp1.impl.servers.rest.util.GenericExceptionMapper;
+import tp1.impl.servers.rest.util.VersionFilter;
+import util.Debug;
+import util.Token;
+
+/**
+ * A replica of the Users service, replicated through Kafka (-Dkafka.brokers, kafka:9092 by default).
+ */
+public class ReplicatedUsersRestServer extends AbstractRestServer {
+	public static final int PORT = 3456;
+	
+	static final String DEFAULT_BROKERS = "kafka:9092";
+
+	private static Logger Log = Logger.getLogger(ReplicatedUsersRestServer.class.getName());
+
+	ReplicatedUsersRestServer() {
+		super( Log, Users.SERVICE_NAME, PORT);
+	}
+	
+	@Override
+	void registerResources(ResourceConfig config) {
+		var impl = new ReplicatedUsers( System.getProperty(UserEvents.BROKERS, DEFAULT_BROKERS));
+		config.register( new UsersResources( impl ));
+		config.register( new VersionFilter( RestUsers.HEADER_VERSION, impl.log() ));
+		config.register( GenericExceptionMapper.class);
+	}
+	
+	public static void main(String[] args) throws Exception {
+
+		Debug.setLogLevel( Level.INFO, Debug.TP1);
+		
+		Token.set( args.length == 0 ? "" : args[0] );
+		
+		new ReplicatedUsersRestServer().start();
+	}	
+}
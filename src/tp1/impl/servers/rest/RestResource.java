@@ -1,5 +1,6 @@
 package tp1.impl.servers.rest;
 
+import java.io.InputStream;
 import java.net.URI;
 //import java.util.Map;
 import java.util.Queue;
@@ -7,8 +8,11 @@ import java.util.Queue;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 import tp1.api.service.java.Result;
+import tp1.api.service.rest.RestDirectory;
 import tp1.impl.servers.common.JavaDirectory;
+import util.IO;
 //import tp1.impl.servers.common.JavaFiles;
 import util.Token;
 
@@ -27,6 +31,20 @@ public class RestResource {
 			throw new WebApplicationException(statusCode(result));
 	}
 
+	/**
+	 * Given a Result<InputStream>, either returns an output that copies the stream
+	 * to the response in chunks, closing it at the end, or throws the matching
+	 * JAX-WS Exception.
+	 */
+	protected StreamingOutput streamOrThrow(Result<InputStream> result) {
+		var in = resultOrThrow(result);
+		return out -> {
+			try (in) {
+				IO.copy(in, out);
+			}
+		};
+	}
+
 	/**
 	 * Translates a Result<T> to a HTTP Status code
 	 */
@@ -56,11 +74,14 @@ public class RestResource {
 
 	static private void doRedirect(Result<?> result) throws WebApplicationException {
 		Queue<String> uris = result.errorValue();
-		String uriToEnd = uris.remove();
+		String uriToEnd = uris.peek();
 		String fileId = JavaDirectory.fileIdFromURL(uriToEnd);
-		String uriWithToken = uriToEnd + "?token=" + Token.createToken(fileId, System.currentTimeMillis());
-		System.out.println(fileId + " " + uriWithToken);
-		uris.add(uriToEnd);
-		throw new WebApplicationException(Response.temporaryRedirect(URI.create(uriWithToken)).build());
+		String token = "?token=" + Token.createToken(fileId, System.currentTimeMillis());
+		String uriWithToken = uriToEnd + token;
+		// All the replicas, for clients that read from them directly...
+		String replicas = String.join(",", uris.stream().map(u -> u + token).toList());
+		throw new WebApplicationException(Response.temporaryRedirect(URI.create(uriWithToken))
+				.header(RestDirectory.HEADER_REPLICAS, replicas)
+				.build());
 	}
 }
\ No newline at end of file
@@ -1,9 +1,10 @@
 package tp1.impl.servers.rest;
 
-import java.util.List;
 import java.util.logging.Logger;
 
 import jakarta.inject.Singleton;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 import tp1.api.User;
 import tp1.api.service.java.Users;
 import tp1.api.service.rest.RestUsers;
@@ -24,7 +25,11 @@ public class UsersResources extends RestResource implements RestUsers {
 	static UsersResources instance;
 	
 	public UsersResources() {
-		impl = new JavaUsers();
+		this(new JavaUsers());
+	}
+
+	public UsersResources(Users impl) {
+		this.impl = impl;
 		instance = this;
 		//publisher = KafkaPublisher.createPublisher(KAFKA_BROKERS);
 
@@ -62,9 +67,13 @@ public class UsersResources extends RestResource implements RestUsers {
 	}
 
 	@Override
-	public List<User> searchUsers(String pattern) {
-		Log.info(String.format("REST searchUsers: pattern = %s", pattern));
+	public Response searchUsers(String pattern, int limit, String cursor) {
+		Log.info(String.format("REST searchUsers: pattern = %s, limit = %d, cursor = %s", pattern, limit, cursor));
 		
-		return resultOrThrow( impl.searchUsers(pattern));
+		var page = resultOrThrow( impl.searchUsersPage(pattern, limit, cursor));
+		var res = Response.ok(page.getUsers(), MediaType.APPLICATION_JSON);
+		if (page.getNext() != null)
+			res.header(NEXT_CURSOR, page.getNext());
+		return res.build();
 	}
 }
@@ -0,0 +1,61 @@
+package tp1.impl.servers.rest.util;
+
+/**
+ *
+ * A single HTTP byte range (RFC 7233), resolved against the size of the resource.
+ *
+ * Only single ranges are supported; multipart range requests are ignored and the whole
+ * resource is served instead, as allowed by the RFC.
+ *
+ */
+public record ByteRange(long start, long end, long size) {
+
+	private static final String BYTES_UNIT = "bytes=";
+
+	/**
+	 * Parses the value of a Range header.
+	 *
+	 * @return the requested range, or null if the header is absent, malformed or asks for multiple ranges.
+	 */
+	public static ByteRange parse(String header, long size) {
+		if (header == null || !header.startsWith(BYTES_UNIT) || header.indexOf(',') >= 0)
+			return null;
+
+		var spec = header.substring(BYTES_UNIT.length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0)
+			return null;
+
+		try {
+			var first = spec.substring(0, dash).trim();
+			var last = spec.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				// suffix range: the last N bytes
+				long suffix = Long.parseLong(last);
+				return suffix > 0 ? new ByteRange(Math.max(0, size - suffix), size - 1, size) : new ByteRange(size, size - 1, size);
+			}
+			long start = Long.parseLong(first);
+			long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+			if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start))
+				return null;
+			return new ByteRange(start, end, size);
+		} catch (NumberFormatException x) {
+			return null;
+		}
+	}
+
+	public boolean isSatisfiable() {
+		return start < size && start <= end;
+	}
+
+	public long length() {
+		return end - start + 1;
+	}
+
+	/**
+	 * The value of the Content-Range header matching this range.
+	 */
+	public String contentRange() {
+		return isSatisfiable() ? String.format("bytes %d-%d/%d", start, end, size) : String.format("bytes */%d", size);
+	}
+}
@@ -0,0 +1,36 @@
+package tp1.impl.servers.rest.util;
+
+import java.io.IOException;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import util.LatencyStats;
+
+/**
+ *
+ * Counts the requests in flight and records their latency, for the server to announce its load.
+ *
+ */
+public class LatencyFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+	static final String START = LatencyFilter.class.getName() + ".start";
+
+	final LatencyStats stats;
+
+	public LatencyFilter(LatencyStats stats) {
+		this.stats = stats;
+	}
+
+	@Override
+	public void filter(ContainerRequestContext request) throws IOException {
+		request.setProperty(START, stats.begin());
+	}
+
+	@Override
+	public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+		if (request.getProperty(START) instanceof Long start)
+			stats.end(start);
+	}
+}
@@ -0,0 +1,62 @@
+package tp1.impl.servers.rest.util;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import tp1.impl.servers.kafka.ReplicatedLog;
+
+/**
+ * 
+ * Gives clients of replicated services read-your-writes consistency, regardless of the
+ * replica they contact.
+ * 
+ * Requests that carry the version of the state a client already observed are held until
+ * the replica catches up to it, or rejected with 503 (Service Unavailable) if it does not
+ * in time, rather than served stale; every response carries the version of the replica,
+ * for the client to send in its next requests.
+ * 
+ * A replica that halted, its state stale for good, rejects all requests with 503.
+ *
+ */
+public class VersionFilter implements ContainerRequestFilter, ContainerResponseFilter {
+	private static Logger Log = Logger.getLogger(VersionFilter.class.getName());
+
+	static final long MAX_WAIT = 5000;
+
+	final String header;
+	final ReplicatedLog<?, ?> log;
+
+	public VersionFilter(String header, ReplicatedLog<?, ?> log) {
+		this.header = header;
+		this.log = log;
+	}
+
+	@Override
+	public void filter(ContainerRequestContext request) throws IOException {
+		if (log.halted()) {
+			request.abortWith(Response.status(Status.SERVICE_UNAVAILABLE).header(header, log.version()).build());
+			return;
+		}
+		var version = request.getHeaderString(header);
+		if (version == null)
+			return;
+		try {
+			if (!log.awaitVersion(Long.parseLong(version), MAX_WAIT)) {
+				Log.warning(String.format("At version %d, behind the requested %s, rejecting request\n", log.version(), version));
+				request.abortWith(Response.status(Status.SERVICE_UNAVAILABLE).header(header, log.version()).build());
+			}
+		} catch (NumberFormatException x) {
+		}
+	}
+
+	@Override
+	public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+		response.getHeaders().putSingle(header, log.version());
+	}
+}
@@ -1,9 +1,12 @@
 package tp1.impl.servers.soap;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpsConfigurator;
 import com.sun.net.httpserver.HttpsServer;
 import jakarta.xml.ws.Endpoint;
@@ -30,6 +33,26 @@ public abstract class AbstractSoapServer extends AbstractServer{
 		}
 	}
 	
+	/*
+	 * Counts the requests in flight and records their latency, for the server to announce its load.
+	 */
+	private class LatencyFilter extends Filter {
+		@Override
+		public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+			var start = requests.begin();
+			try {
+				chain.doFilter(exchange);
+			} finally {
+				requests.end(start);
+			}
+		}
+
+		@Override
+		public String description() {
+			return "latency";
+		}
+	}
+
 	protected void start() {
 		var ip = IP.hostAddress();
 		var serverURI = String.format(SERVER_BASE_URI, ip, port);
@@ -40,15 +63,18 @@ public abstract class AbstractSoapServer extends AbstractServer{
 			server.setExecutor(Executors.newCachedThreadPool());
 			server.setHttpsConfigurator(new HttpsConfigurator(SSLContext.getDefault()));
 
+			var context = server.createContext("/soap");
+			context.getFilters().add(new LatencyFilter());
+
 			var endpoint = Endpoint.create(implementor);
-			endpoint.publish(server.createContext("/soap"));
+			endpoint.publish(context);
 
 			server.start();
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
 
-		Discovery.getInstance().announce(service, serverURI);
+		Discovery.getInstance().announce(service, serverURI, this::load);
 
 		Log.info(String.format("%s Soap Server ready @ %s\n", service, serverURI));
 	}
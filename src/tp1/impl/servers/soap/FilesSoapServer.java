@@ -5,6 +5,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import tp1.api.service.java.Files;
+import tp1.impl.discovery.ServerLoad;
+import tp1.impl.servers.common.JavaFiles;
 import util.Debug;
 import util.Token;
 
@@ -18,6 +20,11 @@ public class FilesSoapServer extends AbstractSoapServer {
 	FilesSoapServer() {
 		super(false, Log, Files.SERVICE_NAME, PORT, new SoapFilesWebService());
 	}
+
+	@Override
+	protected ServerLoad load() {
+		return super.load().withFiles(JavaFiles.storedFiles());
+	}
 	
 	public static void main(String[] args) throws Exception {
 
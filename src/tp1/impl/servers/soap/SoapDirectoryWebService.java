@@ -2,17 +2,18 @@ package tp1.impl.servers.soap;
 
 import static tp1.impl.clients.Clients.FilesClients;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.logging.Logger;
 
 import jakarta.jws.WebService;
 import tp1.api.FileInfo;
+import tp1.api.FileInfoPage;
 import tp1.api.service.java.Directory;
 import tp1.api.service.java.Result.ErrorCode;
 import tp1.api.service.soap.DirectoryException;
 import tp1.api.service.soap.SoapDirectory;
+import tp1.impl.clients.common.HedgedRead;
 import tp1.impl.servers.common.JavaDirectory;
 import util.Token;
 
@@ -68,17 +69,12 @@ public class SoapDirectoryWebService extends SoapWebService implements SoapDirec
 		
 		var res = impl.getFile(filename, userId, accUserId, password);
 		if( res.error() == ErrorCode.REDIRECT) {
-			List<String> aux = new ArrayList<>();
+			// SOAP clients cannot follow redirects, so the contents are proxied, hedging across the replicas...
 			Queue<String> uris = res.errorValue();
-			System.out.println(res.error());
-			while(!uris.isEmpty()) {
-				String loc = uris.remove();
-				aux.add(loc);
-				String fileId = JavaDirectory.fileId(filename, userId);
-				res = FilesClients.get(loc).getFile(fileId, Token.createToken(fileId, System.currentTimeMillis()));
-				if (res.isOK()) break;
-			}
-			uris.addAll(aux);
+			String fileId = JavaDirectory.fileIdFromURL(uris.peek());
+			String token = Token.createToken(fileId, System.currentTimeMillis());
+			var servers = uris.stream().map(JavaDirectory::serverFromURL).toList();
+			res = HedgedRead.read(servers, (u) -> FilesClients.get(u).getFile(fileId, token));
 		}
 		return super.resultOrThrow(res, DirectoryException::new);
 	}
@@ -90,6 +86,13 @@ public class SoapDirectoryWebService extends SoapWebService implements SoapDirec
 		return super.resultOrThrow(impl.lsFile(userId, password), DirectoryException::new);
 	}
 
+	@Override
+	public FileInfoPage lsFilePage(String userId, String password, int limit, String cursor) throws DirectoryException {
+		Log.info(String.format("SOAP lsFilePage: userId = %s, password = %s, limit = %d, cursor = %s\n", userId, password, limit, cursor));
+
+		return super.resultOrThrow(impl.lsFilePage(userId, password, limit, cursor), DirectoryException::new);
+	}
+
 	@Override
 	public void deleteUserFiles(String userId, String password, String token) throws DirectoryException {
 		Log.info(
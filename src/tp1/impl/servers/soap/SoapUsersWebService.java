@@ -5,6 +5,7 @@ import java.util.logging.Logger;
 
 import jakarta.jws.WebService;
 import tp1.api.User;
+import tp1.api.UserPage;
 import tp1.api.service.java.Users;
 import tp1.api.service.soap.SoapUsers;
 import tp1.api.service.soap.UsersException;
@@ -58,4 +59,11 @@ public class SoapUsersWebService extends SoapWebService implements SoapUsers {
 		
 		return super.resultOrThrow( impl.searchUsers(pattern), UsersException::new );
 	}
+
+	@Override
+	public UserPage searchUsersPage(String pattern, int limit, String cursor) throws UsersException  {
+		Log.info(String.format("SOAP searchUsersPage: pattern = %s, limit = %d, cursor = %s", pattern, limit, cursor));
+		
+		return super.resultOrThrow( impl.searchUsersPage(pattern, limit, cursor), UsersException::new );
+	}
 }
@@ -0,0 +1,174 @@
+package util;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Reads the records written by CompactDataOutput.
+ *
+ */
+public class CompactDataInput implements DataInput {
+
+	private static final int MAX_VARINT_BYTES = 10;
+
+	private final byte[] data;
+	private final List<String> strings = new ArrayList<>();
+	private int pos;
+
+	public CompactDataInput(byte[] data) {
+		this(data, 0);
+	}
+
+	public CompactDataInput(byte[] data, int offset) {
+		this.data = data;
+		this.pos = offset;
+	}
+
+	public long readVarLong() throws IOException {
+		long v = 0;
+		for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+			int b = next();
+			v |= (long) (b & 0x7F) << (7 * i);
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		long v = readVarLong();
+		if (v >>> 32 != 0)
+			throw new IOException("Varint out of int range");
+		return (int) (v >>> 1) ^ -(int) (v & 1);
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		long v = readVarLong();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		long tag = readVarLong();
+		if ((tag & 1) != 0) {
+			long index = tag >>> 1;
+			if (index >= strings.size())
+				throw new IOException("Bad string reference: " + index);
+			return strings.get((int) index);
+		}
+		long length = tag >>> 1;
+		if (length > data.length - pos)
+			throw new EOFException();
+		var s = new String(data, pos, (int) length, StandardCharsets.UTF_8);
+		pos += length;
+		if (!s.isEmpty())
+			strings.add(s);
+		return s;
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if (len > data.length - pos)
+			throw new EOFException();
+		System.arraycopy(data, pos, b, off, len);
+		pos += len;
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		n = Math.max(0, Math.min(n, data.length - pos));
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return next() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return (byte) next();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return next();
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return (short) readUnsignedShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return (next() << 8) | next();
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char) readUnsignedShort();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat((int) readFixed(4));
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readFixed(8));
+	}
+
+	/**
+	 * Reads a line of bytes, eg. written with writeBytes, ended by \n, \r, \r\n or the end of the data,
+	 * as DataInputStream.readLine does.
+	 *
+	 * @return the line, without its terminator, or null at the end of the data.
+	 */
+	@Override
+	public String readLine() {
+		if (pos >= data.length)
+			return null;
+
+		var line = new StringBuilder();
+		while (pos < data.length) {
+			int c = data[pos++] & 0xFF;
+			if (c == '\n')
+				break;
+			if (c == '\r') {
+				if (pos < data.length && data[pos] == '\n')
+					pos++;
+				break;
+			}
+			line.append((char) c);
+		}
+		return line.toString();
+	}
+
+	private long readFixed(int bytes) throws IOException {
+		long v = 0;
+		for (int i = 0; i < bytes; i++)
+			v = (v << 8) | next();
+		return v;
+	}
+
+	private int next() throws IOException {
+		if (pos >= data.length)
+			throw new EOFException();
+		return data[pos++] & 0xFF;
+	}
+}
@@ -0,0 +1,135 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * A DataOutput that writes compact records, for codecs written against DataOutput.
+ *
+ * - ints and longs are written as zigzag varints, so small values take a single byte;
+ * - strings are written as a varint length followed by their UTF-8 bytes, and strings
+ * repeated within the same record, such as user ids or URIs, as a reference to their
+ * first occurrence.
+ *
+ * Records must be read back with CompactDataInput.
+ *
+ */
+public class CompactDataOutput implements DataOutput {
+
+	private final ByteArrayOutputStream out;
+	private final Map<String, Integer> strings = new HashMap<>();
+
+	public CompactDataOutput() {
+		this(64);
+	}
+
+	public CompactDataOutput(int size) {
+		this.out = new ByteArrayOutputStream(size);
+	}
+
+	public byte[] toByteArray() {
+		return out.toByteArray();
+	}
+
+	public void writeVarLong(long v) {
+		while ((v & ~0x7FL) != 0) {
+			out.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+
+	@Override
+	public void writeInt(int v) {
+		writeVarLong(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public void writeLong(long v) {
+		writeVarLong((v << 1) ^ (v >> 63));
+	}
+
+	/**
+	 * Writes a literal as (length << 1), a repeated string as (index << 1) | 1.
+	 */
+	@Override
+	public void writeUTF(String s) {
+		var index = strings.get(s);
+		if (index != null) {
+			writeVarLong(((long) index << 1) | 1);
+			return;
+		}
+		var bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarLong((long) bytes.length << 1);
+		out.write(bytes, 0, bytes.length);
+		if (!s.isEmpty())
+			strings.put(s, strings.size());
+	}
+
+	@Override
+	public void write(int b) {
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b) {
+		out.write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		out.write(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) {
+		out.write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) {
+		out.write(v);
+	}
+
+	@Override
+	public void writeShort(int v) {
+		out.write(v >>> 8);
+		out.write(v);
+	}
+
+	@Override
+	public void writeChar(int v) {
+		writeShort(v);
+	}
+
+	@Override
+	public void writeFloat(float v) {
+		writeFixed(Float.floatToIntBits(v), 4);
+	}
+
+	@Override
+	public void writeDouble(double v) {
+		writeFixed(Double.doubleToLongBits(v), 8);
+	}
+
+	@Override
+	public void writeBytes(String s) {
+		for (int i = 0; i < s.length(); i++)
+			out.write(s.charAt(i));
+	}
+
+	@Override
+	public void writeChars(String s) {
+		for (int i = 0; i < s.length(); i++)
+			writeChar(s.charAt(i));
+	}
+
+	private void writeFixed(long v, int bytes) {
+		for (int i = bytes - 1; i >= 0; i--)
+			out.write((int) (v >>> (8 * i)));
+	}
+}
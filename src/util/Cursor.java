@@ -0,0 +1,28 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursors of paginated listings, which encode the key the next page resumes after.
+ */
+public class Cursor {
+
+	/**
+	 * Encodes the position after the given key as a cursor.
+	 */
+	public static String after(String key) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes a cursor, returning the key the listing resumes after, or null for the first page.
+	 *
+	 * @throws IllegalArgumentException if the cursor is malformed.
+	 */
+	public static String keyOf(String cursor) {
+		if (cursor == null || cursor.isEmpty())
+			return null;
+		return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+	}
+}
@@ -1,10 +1,18 @@
 package util;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 final public class IO {
 
+	public static final int CHUNK_SIZE = 64 * 1024;
+
 	public static void write(File out, byte[] data) {
 		try {
 			Files.write(out.toPath(), data);
@@ -13,6 +21,25 @@ final public class IO {
 		}
 	}
 
+	/**
+	 * Writes the stream to a temporary sibling of the file, in chunks, and moves it
+	 * into place, so a failed upload never leaves a truncated file behind.
+	 */
+	public static boolean write(File out, InputStream in) {
+		File tmp = new File(out.getParentFile(), out.getName() + ".tmp" + Thread.currentThread().getId());
+		try {
+			try (var os = Files.newOutputStream(tmp.toPath())) {
+				copy(in, os);
+			}
+			Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (Exception x) {
+			x.printStackTrace();
+			tmp.delete();
+			return false;
+		}
+	}
+
 	public static byte[] read(File from) {
 		try {
 			return Files.readAllBytes(from.toPath());
@@ -22,6 +49,59 @@ final public class IO {
 		}
 	}
 
+	public static InputStream open(File from) {
+		try {
+			return from.isFile() ? Files.newInputStream(from.toPath()) : null;
+		} catch (Exception x) {
+			x.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Copies the input to the output using a fixed size buffer.
+	 */
+	public static long copy(InputStream in, OutputStream out) throws IOException {
+		var buf = new byte[CHUNK_SIZE];
+		long total = 0;
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Sends a region of the file to the output using FileChannel.transferTo, which
+	 * lets the kernel move the bytes instead of staging them in a heap buffer.
+	 */
+	public static long transfer(FileChannel from, long position, long count, OutputStream out) throws IOException {
+		var target = Channels.newChannel(out);
+		long total = 0;
+		while (total < count) {
+			long n = from.transferTo(position + total, count - total, target);
+			if (n <= 0)
+				break;
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Moves the file into place, atomically, replacing the target if it exists.
+	 */
+	public static boolean move(File from, File to) {
+		try {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (Exception x) {
+			x.printStackTrace();
+			from.delete();
+			return false;
+		}
+	}
+
 	public static boolean delete(File file) {
 		try {
 			if (file.exists()) {
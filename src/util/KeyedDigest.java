@@ -0,0 +1,54 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 
+ * HMAC-SHA256 digests under a random key, private to this process.
+ * 
+ * Useful to key caches by secrets, such as passwords, without keeping the secrets,
+ * or anything that can be checked against a guess without the key, as the keys.
+ *
+ */
+public class KeyedDigest {
+
+	static final String ALGORITHM = "HmacSHA256";
+	static final int KEY_SIZE = 32;
+
+	private final ThreadLocal<Mac> macs;
+
+	public KeyedDigest() {
+		var key = new byte[KEY_SIZE];
+		new SecureRandom().nextBytes(key);
+		var spec = new SecretKeySpec(key, ALGORITHM);
+		this.macs = ThreadLocal.withInitial(() -> {
+			try {
+				var mac = Mac.getInstance(ALGORITHM);
+				mac.init(spec);
+				return mac;
+			} catch (GeneralSecurityException x) {
+				throw new IllegalStateException(x);
+			}
+		});
+	}
+
+	/**
+	 * Digests the given values, in order.
+	 */
+	public String of(String... values) {
+		var mac = macs.get();
+		for (var v : values) {
+			mac.update((byte) (v == null ? 0 : 1));
+			if (v != null)
+				mac.update(v.getBytes(StandardCharsets.UTF_8));
+			mac.update((byte) 0);
+		}
+		return Base64.getEncoder().withoutPadding().encodeToString(mac.doFinal());
+	}
+}
@@ -0,0 +1,132 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * Tracks the requests in flight and the latency of the recent ones.
+ *
+ * Latencies are counted in a log-linear histogram, with 8 buckets per power of two
+ * microseconds, so percentiles are accurate to 12.5% in constant space, and recording
+ * is a single atomic increment. The histogram covers the current window and the
+ * previous one; older latencies are dropped as windows rotate.
+ *
+ */
+public class LatencyStats {
+
+	static final long DEFAULT_WINDOW = 10000;
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int BUCKETS = 64 * SUB;
+
+	record Window(long start, AtomicLongArray counts) {
+		Window(long start) {
+			this(start, new AtomicLongArray(BUCKETS));
+		}
+	}
+
+	private final long window;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile Window current, previous;
+
+	public LatencyStats() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param window - the length of a window, in ms.
+	 */
+	public LatencyStats(long window) {
+		this.window = window;
+		this.current = this.previous = new Window(System.currentTimeMillis());
+	}
+
+	/**
+	 * Marks the start of a request.
+	 *
+	 * @return the start time, to pass to end.
+	 */
+	public long begin() {
+		inFlight.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of a request started with begin, recording its latency.
+	 */
+	public void end(long start) {
+		inFlight.decrementAndGet();
+		record(System.nanoTime() - start);
+	}
+
+	public void record(long nanos) {
+		long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		window(System.currentTimeMillis()).counts().incrementAndGet(bucketOf(micros));
+	}
+
+	public int inFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Returns the given percentile, in ms, of the latencies recorded in the last one to two windows.
+	 *
+	 * @param p - the percentile, in [0, 100].
+	 */
+	public double percentile(double p) {
+		var now = System.currentTimeMillis();
+		var cur = window(now);
+		var prev = previous;
+		boolean withPrevious = prev != cur && now - prev.start() < 2 * window;
+
+		var counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = cur.counts().get(i) + (withPrevious ? prev.counts().get(i) : 0);
+			total += counts[i];
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, p)) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, rank))
+				return upperBoundOf(i) / 1000.0;
+		}
+		return upperBoundOf(BUCKETS - 1) / 1000.0;
+	}
+
+	private Window window(long now) {
+		var cur = current;
+		if (now - cur.start() < window)
+			return cur;
+		synchronized (this) {
+			cur = current;
+			if (now - cur.start() >= window) {
+				previous = cur;
+				current = cur = new Window(now);
+			}
+			return cur;
+		}
+	}
+
+	static int bucketOf(long micros) {
+		if (micros < SUB)
+			return (int) micros;
+		int e = 63 - Long.numberOfLeadingZeros(micros);
+		return (e - SUB_BITS + 1) * SUB + (int) ((micros >>> (e - SUB_BITS)) & (SUB - 1));
+	}
+
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB)
+			return bucket;
+		int e = bucket / SUB + SUB_BITS - 1;
+		long lower = (long) (SUB + bucket % SUB) << (e - SUB_BITS);
+		return lower + (1L << (e - SUB_BITS)) - 1;
+	}
+}
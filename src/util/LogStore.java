@@ -0,0 +1,217 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * Durable storage of a collection of entries, as snapshots plus a write-ahead log of
+ * the operations applied since.
+ *
+ * Operations are appended to a write-ahead log, split into numbered segments, and
+ * are durable once their future completes. After a number of appends, the log is
+ * rolled over to a new segment and a snapshot of all the entries is written in the
+ * background; the snapshot and the segments from its generation onwards are enough
+ * to recover the state, so older ones are deleted.
+ *
+ * The snapshot is taken while the entries keep changing, so replaying an operation
+ * must be idempotent; replaying the segments over it then yields the latest state.
+ * For that, an operation must not be logged to a segment older than the snapshot
+ * after the snapshot started, so updates that log their operation run in logging,
+ * which excludes the roll over to a new segment.
+ *
+ * Subclasses define how entries are written to and read from snapshots.
+ *
+ */
+public abstract class LogStore<E> {
+	private static Logger Log = Logger.getLogger(LogStore.class.getName());
+
+	private static final String WAL = "wal-";
+	private static final String SNAPSHOT = "snapshot-";
+	private static final Pattern SEGMENT = Pattern.compile("(wal|snapshot)-(\\d+)");
+
+	protected final Path dir;
+	protected final long snapshotEvery;
+	private final int magic;
+	private final AtomicLong appends = new AtomicLong();
+	private final AtomicBoolean snapshotting = new AtomicBoolean();
+	private final ExecutorService snapshotter = Executors.newSingleThreadExecutor();
+	private final ReadWriteLock rolls = new ReentrantReadWriteLock();
+
+	private long generation;
+	private WriteAheadLog wal;
+
+	/**
+	 * @param magic - number identifying the snapshots of this kind of store.
+	 */
+	protected LogStore(Path dir, long snapshotEvery, int magic) {
+		this.dir = dir;
+		this.snapshotEvery = snapshotEvery;
+		this.magic = magic;
+	}
+
+	protected abstract void writeEntry(DataOutput out, E entry) throws IOException;
+
+	protected abstract E readEntry(DataInput in) throws IOException;
+
+	/**
+	 * Loads the entries of the latest snapshot and replays the log over them, then opens a new log segment.
+	 */
+	public synchronized void recover(Consumer<E> entries, Consumer<byte[]> ops) throws IOException {
+		Files.createDirectories(dir);
+
+		long snapshot = latest(SNAPSHOT), last = Math.max(snapshot, latest(WAL));
+		long t0 = System.currentTimeMillis();
+		if (snapshot >= 0)
+			readSnapshot(path(SNAPSHOT, snapshot), entries);
+
+		long replayed = 0;
+		for (long gen = Math.max(snapshot, 0); gen <= last; gen++)
+			replayed += WriteAheadLog.replay(path(WAL, gen), ops);
+
+		Log.info(String.format("Recovered %s, snapshot: %d, replayed: %d ops, in %d ms\n", dir, snapshot, replayed,
+				System.currentTimeMillis() - t0));
+
+		generation = last + 1;
+		wal = new WriteAheadLog(path(WAL, generation));
+	}
+
+	/**
+	 * Logs an operation. Operations are logged in the order this method is called.
+	 *
+	 * @return a future completed once the operation is durable.
+	 */
+	public CompletableFuture<Void> log(byte[] op) {
+		synchronized (this) {
+			appends.incrementAndGet();
+			return wal.append(op);
+		}
+	}
+
+	/**
+	 * Runs an update of the entries that logs its operation; the log is not rolled over while it
+	 * runs, so once the update returns, the entries reflect it before a snapshot of them starts.
+	 */
+	public <T> T logging(Supplier<T> update) {
+		rolls.readLock().lock();
+		try {
+			return update.get();
+		} finally {
+			rolls.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Takes a snapshot in the background, if enough operations were logged since the last one.
+	 */
+	public void maybeSnapshot(Collection<E> entries) {
+		if (appends.get() >= snapshotEvery && snapshotting.compareAndSet(false, true))
+			snapshotter.execute(() -> {
+				try {
+					snapshot(entries);
+				} catch (IOException x) {
+					x.printStackTrace();
+				} finally {
+					snapshotting.set(false);
+				}
+			});
+	}
+
+	public void snapshot(Collection<E> entries) throws IOException {
+		WriteAheadLog previous;
+		long gen;
+		rolls.writeLock().lock();
+		try {
+			synchronized (this) {
+				appends.set(0);
+				previous = wal;
+				gen = ++generation;
+				wal = new WriteAheadLog(path(WAL, gen));
+			}
+		} finally {
+			rolls.writeLock().unlock();
+		}
+		previous.close();
+
+		var tmp = dir.resolve(SNAPSHOT + gen + ".tmp");
+		try (var ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			var crc = new CRC32();
+			var out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), IO.CHUNK_SIZE), crc));
+			out.writeInt(magic);
+			for (var entry : entries) {
+				out.writeBoolean(true);
+				writeEntry(out, entry);
+			}
+			out.writeBoolean(false);
+			out.flush();
+			out.writeLong(crc.getValue());
+			out.flush();
+			ch.force(true);
+		}
+		Files.move(tmp, path(SNAPSHOT, gen), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		try (var segments = Files.list(dir)) {
+			segments.forEach(p -> {
+				var m = SEGMENT.matcher(p.getFileName().toString());
+				if (m.matches() && Long.parseLong(m.group(2)) < gen)
+					IO.delete(p.toFile());
+			});
+		}
+		Log.info(String.format("Snapshot %d of %s written\n", gen, dir));
+	}
+
+	private void readSnapshot(Path path, Consumer<E> entries) throws IOException {
+		var crc = new CRC32();
+		try (var in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path), IO.CHUNK_SIZE), crc))) {
+			if (in.readInt() != magic)
+				throw new IOException("Not a snapshot of this store: " + path);
+			while (in.readBoolean())
+				entries.accept(readEntry(in));
+			long expected = crc.getValue();
+			if (in.readLong() != expected)
+				throw new IOException("Corrupt snapshot: " + path);
+		}
+	}
+
+	private long latest(String prefix) throws IOException {
+		try (var segments = Files.list(dir)) {
+			return segments.map(p -> SEGMENT.matcher(p.getFileName().toString()))
+					.filter(m -> m.matches() && prefix.equals(m.group(1) + "-"))
+					.mapToLong(m -> Long.parseLong(m.group(2)))
+					.max().orElse(-1);
+		} catch (UncheckedIOException x) {
+			throw x.getCause();
+		}
+	}
+
+	private Path path(String prefix, long gen) {
+		return dir.resolve(prefix + gen);
+	}
+}
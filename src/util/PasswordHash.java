@@ -0,0 +1,84 @@
+package util;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * 
+ * A salted PBKDF2 hash of a password.
+ * 
+ * Verification recomputes the hash with the stored salt and iterations, and compares
+ * the results in constant time. The number of iterations for new hashes is set with
+ * -Dusers.pbkdf2.iterations.
+ *
+ */
+public record PasswordHash(int iterations, byte[] salt, byte[] hash) {
+
+	static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	static final String ITERATIONS = "users.pbkdf2.iterations";
+	static final int DEFAULT_ITERATIONS = 100_000;
+	static final int SALT_SIZE = 16;
+	static final int HASH_BITS = 256;
+	static final String PREFIX = "pbkdf2";
+
+	private static final SecureRandom random = new SecureRandom();
+
+	public static PasswordHash of(String password) {
+		var salt = new byte[SALT_SIZE];
+		random.nextBytes(salt);
+		int iterations = Integer.getInteger(ITERATIONS, DEFAULT_ITERATIONS);
+		return new PasswordHash(iterations, salt, pbkdf2(password, salt, iterations));
+	}
+
+	public boolean matches(String password) {
+		return password != null && MessageDigest.isEqual(hash, pbkdf2(password, salt, iterations));
+	}
+
+	/**
+	 * Encodes the hash as text, as pbkdf2$iterations$salt$hash.
+	 */
+	public String encode() {
+		var b64 = Base64.getEncoder();
+		return String.format("%s$%d$%s$%s", PREFIX, iterations, b64.encodeToString(salt), b64.encodeToString(hash));
+	}
+
+	public static PasswordHash decode(String encoded) {
+		var tokens = encoded.split("\\$");
+		if (tokens.length != 4 || !tokens[0].equals(PREFIX))
+			throw new IllegalArgumentException("Not a password hash: " + encoded);
+		var b64 = Base64.getDecoder();
+		return new PasswordHash(Integer.parseInt(tokens[1]), b64.decode(tokens[2]), b64.decode(tokens[3]));
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+		var spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException x) {
+			throw new IllegalStateException(x);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof PasswordHash h && iterations == h.iterations && Arrays.equals(salt, h.salt) && Arrays.equals(hash, h.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(hash);
+	}
+
+	@Override
+	public String toString() {
+		return PREFIX + "$" + iterations + "$...";
+	}
+}
@@ -0,0 +1,170 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * An append-only log of binary records, with group commit.
+ *
+ * Each record is framed as [length][crc32][payload]. Appends are queued and written
+ * by a single flusher thread, which forces the file once for all the records queued
+ * while the previous batch was being flushed. Concurrent writers thus share the cost
+ * of the fsync.
+ *
+ * A crash may leave a partially written record at the end of the log; replay stops
+ * at the first incomplete or corrupt record and truncates the log there.
+ *
+ */
+public class WriteAheadLog implements Closeable {
+
+	private static final int HEADER_SIZE = 8;
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+	record Pending(byte[] data, CompletableFuture<Void> done) {
+	}
+
+	private final Path path;
+	private final FileChannel channel;
+	private final Thread flusher;
+	private List<Pending> queue = new ArrayList<>();
+	private boolean closed;
+
+	public WriteAheadLog(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.channel.position(channel.size());
+		this.flusher = new Thread(this::flushLoop, "wal-" + path.getFileName());
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	public Path path() {
+		return path;
+	}
+
+	/**
+	 * Queues a record to be appended to the log.
+	 *
+	 * @return a future completed once the record is durable.
+	 */
+	public CompletableFuture<Void> append(byte[] data) {
+		var pending = new Pending(data, new CompletableFuture<>());
+		synchronized (this) {
+			if (closed)
+				throw new IllegalStateException("Log is closed: " + path);
+			queue.add(pending);
+			this.notifyAll();
+		}
+		return pending.done();
+	}
+
+	/**
+	 * Flushes the queued records and closes the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			this.notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException x) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+	}
+
+	/**
+	 * Reads the records of a log, in order, truncating any torn record at its end.
+	 *
+	 * @return the number of records read.
+	 */
+	public static long replay(Path path, Consumer<byte[]> consumer) throws IOException {
+		if (!Files.exists(path))
+			return 0;
+
+		long records = 0;
+		try (var ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), IO.CHUNK_SIZE));
+			long size = ch.size(), valid = 0;
+			var crc = new CRC32();
+			while (size - valid >= HEADER_SIZE) {
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if (length < 0 || length > MAX_RECORD_SIZE || size - valid - HEADER_SIZE < length)
+					break;
+
+				var data = new byte[length];
+				in.readFully(data);
+				crc.reset();
+				crc.update(data);
+				if ((int) crc.getValue() != checksum)
+					break;
+
+				consumer.accept(data);
+				valid += HEADER_SIZE + length;
+				records++;
+			}
+			if (valid < size)
+				ch.truncate(valid);
+		}
+		return records;
+	}
+
+	private void flushLoop() {
+		for (;;) {
+			List<Pending> batch;
+			synchronized (this) {
+				while (queue.isEmpty() && !closed)
+					try {
+						this.wait();
+					} catch (InterruptedException x) {
+					}
+				if (queue.isEmpty())
+					return;
+				batch = queue;
+				queue = new ArrayList<>();
+			}
+			try {
+				write(batch);
+				channel.force(false);
+				batch.forEach(p -> p.done().complete(null));
+			} catch (IOException x) {
+				x.printStackTrace();
+				batch.forEach(p -> p.done().completeExceptionally(x));
+			}
+		}
+	}
+
+	private void write(List<Pending> batch) throws IOException {
+		int total = 0;
+		for (var p : batch)
+			total += HEADER_SIZE + p.data().length;
+
+		var buf = ByteBuffer.allocate(total);
+		var crc = new CRC32();
+		for (var p : batch) {
+			crc.reset();
+			crc.update(p.data());
+			buf.putInt(p.data().length).putInt((int) crc.getValue()).put(p.data());
+		}
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf);
+	}
+}